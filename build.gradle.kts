@@ -2,6 +2,7 @@ plugins {
     id("com.github.johnrengelman.shadow") version "7.1.2"
     id("application")
     id("java")
+    id("me.champeau.jmh") version "0.6.6"
 }
 
 group = "org.hyperion"
@@ -39,6 +40,10 @@ tasks {
     }
 }
 
+jmh {
+    profilers.add("gc")
+}
+
 val appMainClass = "org.hyperion.Server"
 
 application {
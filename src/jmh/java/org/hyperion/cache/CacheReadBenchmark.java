@@ -0,0 +1,215 @@
+package org.hyperion.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads every file of an index of a real 317 cache, once with the
+ * <code>Cache</code> and once with the reader it replaced, which mapped the
+ * index entry and then every block of the file separately.
+ * <p>
+ * The cache is read from the directory in the <code>cache.dir</code> system
+ * property, or <code>./data/cache/</code> if it is not set. It must contain
+ * <code>main_file_cache.dat</code> as well as the index files, for example:
+ * <code>-jvmArgsAppend -Dcache.dir=/path/to/cache/</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheReadBenchmark {
+
+    /**
+     * The index whose files are read: the archives, models, animations,
+     * music and maps.
+     */
+    @Param({"0", "1", "2", "3", "4"})
+    private int index;
+
+    /**
+     * The cache.
+     */
+    private Cache cache;
+
+    /**
+     * The reader the cache replaced.
+     */
+    private MappedBlockReader legacy;
+
+    /**
+     * The number of files in the index.
+     */
+    private int files;
+
+    /**
+     * Opens the cache with both readers.
+     *
+     * @throws Exception if an error occurs.
+     */
+    @Setup
+    public void setup() throws Exception {
+        final File directory = new File(System.getProperty("cache.dir", "./data/cache/"));
+        cache = new Cache(directory);
+        legacy = new MappedBlockReader(directory, cache.getCacheCount());
+        files = cache.getFileCount(index);
+    }
+
+    /**
+     * Closes both readers.
+     *
+     * @throws Exception if an error occurs.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        cache.close();
+        legacy.close();
+    }
+
+    /**
+     * Reads every file of the index with the cache.
+     *
+     * @param blackhole The blackhole.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Benchmark
+    public void mapped(final Blackhole blackhole) throws IOException {
+        for (int file = 0; file < files; file++) {
+            blackhole.consume(cache.getFile(index, file).getBuffer());
+        }
+    }
+
+    /**
+     * Reads every file of the index with the reader the cache replaced.
+     *
+     * @param blackhole The blackhole.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Benchmark
+    public void mappedPerBlock(final Blackhole blackhole) throws IOException {
+        for (int file = 0; file < files; file++) {
+            blackhole.consume(legacy.getFile(index, file));
+        }
+    }
+
+    /**
+     * The cache reader as it was before the files were mapped once, which
+     * maps the index entry and every block of a file on each read.
+     */
+    private static final class MappedBlockReader {
+
+        /**
+         * The data file.
+         */
+        private final RandomAccessFile dataFile;
+
+        /**
+         * The index files.
+         */
+        private final RandomAccessFile[] indexFiles;
+
+        /**
+         * Opens the reader.
+         *
+         * @param directory The directory where the cache is stored.
+         * @param count     The number of index files.
+         * @throws IOException if an I/O error occurs.
+         */
+        private MappedBlockReader(final File directory, final int count) throws IOException {
+            dataFile = new RandomAccessFile(new File(directory, "main_file_cache.dat"), "r");
+            indexFiles = new RandomAccessFile[count];
+            for (int i = 0; i < count; i++) {
+                indexFiles[i] = new RandomAccessFile(new File(directory, "main_file_cache.idx" + i), "r");
+            }
+        }
+
+        /**
+         * Reads a file.
+         *
+         * @param cache The cache id.
+         * @param file  The file id.
+         * @return The file's data.
+         * @throws IOException if an I/O error occurs.
+         */
+        private ByteBuffer getFile(int cache, final int file) throws IOException {
+            final RandomAccessFile indexFile = indexFiles[cache];
+            cache += 1;
+
+            final ByteBuffer index = indexFile.getChannel().map(MapMode.READ_ONLY, Cache.INDEX_SIZE * file, Cache.INDEX_SIZE);
+            final int fileSize = ((index.get() & 0xFF) << 16) | ((index.get() & 0xFF) << 8) | (index.get() & 0xFF);
+            final int fileBlock = ((index.get() & 0xFF) << 16) | ((index.get() & 0xFF) << 8) | (index.get() & 0xFF);
+
+            int remainingBytes = fileSize;
+            int currentBlock = fileBlock;
+
+            final ByteBuffer fileBuffer = ByteBuffer.allocate(fileSize);
+            int cycles = 0;
+
+            while (remainingBytes > 0) {
+                int size = Cache.DATA_SIZE;
+                final int rem = (int) (dataFile.length() - currentBlock * Cache.DATA_SIZE);
+                if (rem < Cache.DATA_SIZE) {
+                    size = rem;
+                }
+
+                final ByteBuffer block = dataFile.getChannel().map(MapMode.READ_ONLY, currentBlock * Cache.DATA_SIZE, size);
+                final int nextFileId = block.getShort() & 0xFFFF;
+                final int currentPartId = block.getShort() & 0xFFFF;
+                final int nextBlockId = ((block.get() & 0xFF) << 16) | ((block.get() & 0xFF) << 8) | (block.get() & 0xFF);
+                final int nextCacheId = block.get() & 0xFF;
+
+                final int bytesThisCycle = Math.min(remainingBytes, Cache.DATA_BLOCK_SIZE);
+                final byte[] temp = new byte[bytesThisCycle];
+                block.get(temp);
+                fileBuffer.put(temp, 0, bytesThisCycle);
+
+                remainingBytes -= bytesThisCycle;
+
+                if (cycles != currentPartId) {
+                    throw new IOException("Cycle does not match part id.");
+                }
+                if (remainingBytes > 0 && (nextCacheId != cache || nextFileId != file)) {
+                    throw new IOException("Unexpected next block.");
+                }
+
+                cycles++;
+                currentBlock = nextBlockId;
+            }
+            fileBuffer.flip();
+            return fileBuffer;
+        }
+
+        /**
+         * Closes the files.
+         *
+         * @throws IOException if an I/O error occurs.
+         */
+        private void close() throws IOException {
+            dataFile.close();
+            for (final RandomAccessFile indexFile : indexFiles) {
+                indexFile.close();
+            }
+        }
+
+    }
+
+}
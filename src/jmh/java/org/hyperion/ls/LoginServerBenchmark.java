@@ -0,0 +1,311 @@
+package org.hyperion.ls;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+import org.hyperion.rs2.WorldLoader;
+import org.hyperion.rs2.model.Player;
+import org.hyperion.rs2.model.PlayerDetails;
+import org.hyperion.rs2.util.IoBufferUtils;
+import org.hyperion.util.login.LoginPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the <code>LoginServer</code> with several simulated nodes, each
+ * logging in, loading, saving and disconnecting thousands of players at the
+ * same time. With a single I/O thread every request is handled in turn, as it
+ * was before requests were handled in parallel.
+ * <p>
+ * Packets are passed straight to the connection handler, and the loader
+ * serializes players in memory and waits a fixed time to stand in for disk
+ * I/O, so the benchmark needs neither sockets nor player files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginServerBenchmark {
+
+    /**
+     * The number of simulated nodes.
+     */
+    private static final int NODES = 4;
+
+    /**
+     * The number of players logged in by each node per invocation.
+     */
+    private static final int PLAYERS = 500;
+
+    /**
+     * The time each simulated load or save waits, in nanoseconds.
+     */
+    private static final long IO_LATENCY = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * The number of I/O threads in the login server.
+     */
+    @Param({"1", "16"})
+    private int ioThreads;
+
+    /**
+     * The login server.
+     */
+    private LoginServer server;
+
+    /**
+     * The connection handler the packets are passed to.
+     */
+    private LoginConnectionHandler handler;
+
+    /**
+     * The simulated sessions of the nodes.
+     */
+    private final IoSession[] sessions = new IoSession[NODES];
+
+    /**
+     * The check login request payloads, by node and player.
+     */
+    private final IoBuffer[][] checkLogins = new IoBuffer[NODES][PLAYERS];
+
+    /**
+     * The load request payloads, by node and player.
+     */
+    private final IoBuffer[][] loads = new IoBuffer[NODES][PLAYERS];
+
+    /**
+     * The save request payloads, by node and player.
+     */
+    private final IoBuffer[][] saves = new IoBuffer[NODES][PLAYERS];
+
+    /**
+     * The disconnect payloads, by node and player.
+     */
+    private final IoBuffer[][] disconnects = new IoBuffer[NODES][PLAYERS];
+
+    /**
+     * The threads which send the packets of each node.
+     */
+    private ExecutorService nodeThreads;
+
+    /**
+     * Counts the save responses of the current invocation.
+     */
+    private volatile CountDownLatch saved;
+
+    /**
+     * Starts the login server, authenticates the nodes and builds the
+     * request payloads.
+     *
+     * @throws Exception if an error occurs.
+     */
+    @Setup
+    public void setup() throws Exception {
+        server = new LoginServer(new SimulatedLoader(), ioThreads);
+        handler = new LoginConnectionHandler(server);
+        nodeThreads = Executors.newFixedThreadPool(NODES);
+
+        final IoBuffer data = IoBuffer.allocate(1024);
+        data.setAutoExpand(true);
+        new Player(new PlayerDetails(null, "player", "", 0, null, null)).serialize(data);
+        data.flip();
+
+        for (int node = 0; node < NODES; node++) {
+            sessions[node] = createSession();
+            final IoBuffer auth = IoBuffer.allocate(16);
+            auth.setAutoExpand(true);
+            auth.putShort((short) (1000 + node));
+            IoBufferUtils.putRS2String(auth, "benchmark");
+            auth.flip();
+            handler.messageReceived(sessions[node], new LoginPacket(LoginPacket.AUTH, auth));
+
+            for (int player = 0; player < PLAYERS; player++) {
+                final String name = "n" + node + "p" + player;
+                checkLogins[node][player] = payload(name, "password");
+                loads[node][player] = payload(name, null);
+                disconnects[node][player] = payload(name, null);
+
+                final IoBuffer save = IoBuffer.allocate(16 + data.remaining());
+                save.setAutoExpand(true);
+                IoBufferUtils.putRS2String(save, name);
+                save.putShort((short) data.remaining());
+                save.put(data.duplicate());
+                save.flip();
+                saves[node][player] = save;
+            }
+        }
+    }
+
+    /**
+     * Disconnects the nodes and stops the login server.
+     *
+     * @throws Exception if an error occurs.
+     */
+    @TearDown
+    public void tearDown() throws Exception {
+        for (final IoSession session : sessions) {
+            handler.sessionClosed(session);
+        }
+        nodeThreads.shutdown();
+        server.shutdown();
+    }
+
+    /**
+     * Sends every request of every player from all the nodes at once, and
+     * waits for the last save to be answered.
+     *
+     * @throws Exception if an error occurs.
+     */
+    @Benchmark
+    public void loginStorm() throws Exception {
+        saved = new CountDownLatch(NODES * PLAYERS);
+        for (int node = 0; node < NODES; node++) {
+            final int n = node;
+            nodeThreads.execute(() -> {
+                try {
+                    for (int player = 0; player < PLAYERS; player++) {
+                        send(n, LoginPacket.CHECK_LOGIN, player, checkLogins[n][player]);
+                        send(n, LoginPacket.LOAD, player, loads[n][player]);
+                        send(n, LoginPacket.SAVE, player, saves[n][player]);
+                        send(n, LoginPacket.DISCONNECT, player, disconnects[n][player]);
+                    }
+                } catch (final Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        saved.await();
+    }
+
+    /**
+     * Passes a packet from a node to the connection handler.
+     *
+     * @param node    The node.
+     * @param opcode  The opcode.
+     * @param player  The player, used as the request id.
+     * @param payload The payload, which is duplicated.
+     * @throws Exception if an error occurs.
+     */
+    private void send(final int node, final int opcode, final int player, final IoBuffer payload) throws Exception {
+        handler.messageReceived(sessions[node], new LoginPacket(opcode, player + 1, payload.duplicate()));
+    }
+
+    /**
+     * Builds a payload of a name and, optionally, a password.
+     *
+     * @param name     The name.
+     * @param password The password, or <code>null</code>.
+     * @return The payload.
+     */
+    private static IoBuffer payload(final String name, final String password) {
+        final IoBuffer buf = IoBuffer.allocate(32);
+        buf.setAutoExpand(true);
+        IoBufferUtils.putRS2String(buf, name);
+        if (password != null) {
+            IoBufferUtils.putRS2String(buf, password);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Creates a simulated node session, which keeps attributes and counts the
+     * save responses written to it.
+     *
+     * @return The session.
+     */
+    private IoSession createSession() {
+        final Map<Object, Object> attributes = new ConcurrentHashMap<>();
+        return (IoSession) Proxy.newProxyInstance(IoSession.class.getClassLoader(), new Class<?>[]{IoSession.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "write" -> {
+                    if (((LoginPacket) args[0]).getOpcode() == LoginPacket.SAVE_RESPONSE) {
+                        saved.countDown();
+                    }
+                    return null;
+                }
+                case "getAttribute" -> {
+                    return attributes.get(args[0]);
+                }
+                case "setAttribute" -> {
+                    return attributes.put(args[0], args.length > 1 ? args[1] : Boolean.TRUE);
+                }
+                case "containsAttribute" -> {
+                    return attributes.containsKey(args[0]);
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "toString" -> {
+                    return "SimulatedNode";
+                }
+                default -> {
+                    return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                }
+            }
+        });
+    }
+
+    /**
+     * A loader which serializes players in memory and waits a fixed time for
+     * each load and save, in place of disk I/O.
+     */
+    private static final class SimulatedLoader implements WorldLoader {
+
+        @Override
+        public LoginResult checkLogin(final PlayerDetails pd) {
+            LockSupport.parkNanos(IO_LATENCY);
+            return new LoginResult(2, new Player(pd));
+        }
+
+        @Override
+        public boolean loadPlayer(final Player player) {
+            LockSupport.parkNanos(IO_LATENCY);
+            return true;
+        }
+
+        @Override
+        public boolean savePlayer(final Player player) {
+            final IoBuffer buf = IoBuffer.allocate(1024);
+            buf.setAutoExpand(true);
+            player.serialize(buf);
+            LockSupport.parkNanos(IO_LATENCY);
+            return true;
+        }
+
+        @Override
+        public boolean[] savePlayers(final List<SavedGame> games) {
+            LockSupport.parkNanos(IO_LATENCY);
+            final boolean[] results = new boolean[games.size()];
+            Arrays.fill(results, true);
+            return results;
+        }
+
+    }
+
+}
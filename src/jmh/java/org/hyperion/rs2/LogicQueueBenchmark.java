@@ -0,0 +1,135 @@
+package org.hyperion.rs2;
+
+import org.hyperion.rs2.task.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares pushing tasks to the <code>GameEngine</code>, which executes them
+ * from its lock-free queue on the logic thread, with the path it replaced: a
+ * <code>LinkedBlockingQueue</code> taken from by the engine thread, which
+ * wrapped each task and submitted it to a single-threaded scheduled executor.
+ * <p>
+ * Each invocation pushes a batch of tasks and waits for the last one to be
+ * executed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogicQueueBenchmark {
+
+    /**
+     * The number of tasks pushed per invocation.
+     */
+    private static final int TASKS = 1000;
+
+    /**
+     * A task which does nothing.
+     */
+    private static final Task EMPTY_TASK = context -> {
+    };
+
+    /**
+     * The game engine.
+     */
+    private GameEngine engine;
+
+    /**
+     * The queue of the old path.
+     */
+    private BlockingQueue<Task> queue;
+
+    /**
+     * The logic service of the old path.
+     */
+    private ScheduledExecutorService logicService;
+
+    /**
+     * The thread which moved tasks from the queue to the logic service in
+     * the old path.
+     */
+    private Thread dispatcher;
+
+    /**
+     * Starts the engine and the threads of the old path.
+     */
+    @Setup
+    public void setup() {
+        engine = new GameEngine();
+        engine.start();
+
+        queue = new LinkedBlockingQueue<>();
+        logicService = Executors.newScheduledThreadPool(1);
+        dispatcher = new Thread(() -> {
+            try {
+                while (true) {
+                    final Task task = queue.take();
+                    logicService.submit(() -> task.execute(engine));
+                }
+            } catch (final InterruptedException ignored) {
+            }
+        });
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Stops the engine and the threads of the old path.
+     */
+    @TearDown
+    public void tearDown() {
+        engine.stop();
+        dispatcher.interrupt();
+        logicService.shutdown();
+    }
+
+    /**
+     * Pushes a batch of tasks to the game engine.
+     *
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    @Benchmark
+    public void logicQueue() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        for (int i = 1; i < TASKS; i++) {
+            engine.pushTask(EMPTY_TASK);
+        }
+        engine.pushTask(context -> done.countDown());
+        done.await();
+    }
+
+    /**
+     * Pushes a batch of tasks through the old path.
+     *
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    @Benchmark
+    public void blockingQueue() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        for (int i = 1; i < TASKS; i++) {
+            queue.offer(EMPTY_TASK);
+        }
+        queue.offer(context -> done.countDown());
+        done.await();
+    }
+
+}
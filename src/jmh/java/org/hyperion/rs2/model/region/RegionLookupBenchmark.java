@@ -0,0 +1,122 @@
+package org.hyperion.rs2.model.region;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking regions up in the <code>RegionTable</code> with the
+ * <code>HashMap</code> keyed by <code>RegionCoordinates</code> it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegionLookupBenchmark {
+
+    /**
+     * The number of lookups per invocation.
+     */
+    private static final int LOOKUPS = 1024;
+
+    /**
+     * The x coordinate of the first region looked up.
+     */
+    private static final int MIN_REGION_X = 75;
+
+    /**
+     * The y coordinate of the first region looked up.
+     */
+    private static final int MIN_REGION_Y = 75;
+
+    /**
+     * The number of regions looked up along each side.
+     */
+    private static final int REGIONS = 64;
+
+    /**
+     * The region map, as it was before the region table.
+     */
+    private final Map<RegionCoordinates, Region> map = new HashMap<>();
+
+    /**
+     * The region table.
+     */
+    private final RegionTable table = new RegionTable();
+
+    /**
+     * The x coordinates to look up.
+     */
+    private final int[] xs = new int[LOOKUPS];
+
+    /**
+     * The y coordinates to look up.
+     */
+    private final int[] ys = new int[LOOKUPS];
+
+    /**
+     * Fills both stores with the same regions and picks the coordinates to
+     * look up.
+     */
+    @Setup
+    public void setup() {
+        for (int x = MIN_REGION_X; x < MIN_REGION_X + REGIONS; x++) {
+            for (int y = MIN_REGION_Y; y < MIN_REGION_Y + REGIONS; y++) {
+                final Region region = table.get(x, y);
+                map.put(region.getCoordinates(), region);
+            }
+        }
+        final Random random = new Random(0);
+        for (int i = 0; i < LOOKUPS; i++) {
+            xs[i] = MIN_REGION_X + random.nextInt(REGIONS);
+            ys[i] = MIN_REGION_Y + random.nextInt(REGIONS);
+        }
+    }
+
+    /**
+     * Looks regions up the way <code>RegionManager</code> used to.
+     *
+     * @param blackhole The blackhole.
+     */
+    @Benchmark
+    public void hashMap(final Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            final RegionCoordinates key = new RegionCoordinates(xs[i], ys[i]);
+            if (map.containsKey(key)) {
+                blackhole.consume(map.get(key));
+            } else {
+                final Region region = new Region(key);
+                map.put(key, region);
+                blackhole.consume(region);
+            }
+        }
+    }
+
+    /**
+     * Looks regions up in the region table.
+     *
+     * @param blackhole The blackhole.
+     */
+    @Benchmark
+    public void regionTable(final Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(table.get(xs[i], ys[i]));
+        }
+    }
+
+}
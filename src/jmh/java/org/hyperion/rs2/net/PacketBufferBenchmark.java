@@ -0,0 +1,119 @@
+package org.hyperion.rs2.net;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building and sending a cycle's update packets for 2,000 players
+ * with buffers from the <code>BufferPool</code> against freshly allocated
+ * heap buffers, as was done before the pool. The garbage collection profiler
+ * is enabled in the build, so the allocation rate of each is reported along
+ * with the time taken.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBufferBenchmark {
+
+    /**
+     * The number of players updated per invocation.
+     */
+    private static final int PLAYERS = 2000;
+
+    /**
+     * The number of local players in each player's update.
+     */
+    private static final int LOCAL_PLAYERS = 64;
+
+    /**
+     * The length of each player's update block.
+     */
+    private static final int UPDATE_BLOCK_LENGTH = 256;
+
+    /**
+     * The ISAAC cipher used to encode the opcodes.
+     */
+    private ISAACCipher cipher;
+
+    /**
+     * The update block appended to each player's update.
+     */
+    private final byte[] updateBlock = new byte[UPDATE_BLOCK_LENGTH];
+
+    /**
+     * Creates the cipher and fills the update block.
+     */
+    @Setup
+    public void setup() {
+        cipher = new ISAACCipher(new int[]{1, 2, 3, 4});
+        for (int i = 0; i < updateBlock.length; i++) {
+            updateBlock[i] = (byte) i;
+        }
+    }
+
+    /**
+     * Builds and encodes every player's update with pooled buffers, which are
+     * released once they would have been sent.
+     *
+     * @param blackhole The blackhole.
+     */
+    @Benchmark
+    public void pooled(final Blackhole blackhole) {
+        for (int player = 0; player < PLAYERS; player++) {
+            final PacketBuilder builder = new PacketBuilder(81, Packet.Type.VARIABLE_SHORT, 1024);
+            for (int i = 0; i < LOCAL_PLAYERS; i++) {
+                builder.putShort(i);
+                builder.put((byte) i);
+            }
+            builder.put(updateBlock);
+            final Packet packet = builder.toPacket();
+
+            final IoBuffer buffer = BufferPool.acquire(RS2Encoder.getEncodedLength(packet));
+            RS2Encoder.encode(packet, cipher, buffer);
+            packet.release();
+            blackhole.consume(buffer.flip());
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Builds and encodes every player's update with new heap buffers, which
+     * grow from a small capacity, as was done before the pool.
+     *
+     * @param blackhole The blackhole.
+     */
+    @Benchmark
+    public void unpooled(final Blackhole blackhole) {
+        for (int player = 0; player < PLAYERS; player++) {
+            final IoBuffer payload = IoBuffer.allocate(16);
+            payload.setAutoExpand(true);
+            payload.setAutoShrink(true);
+            for (int i = 0; i < LOCAL_PLAYERS; i++) {
+                payload.putShort((short) i);
+                payload.put((byte) i);
+            }
+            payload.put(updateBlock);
+            final Packet packet = new Packet(81, Packet.Type.VARIABLE_SHORT, payload.flip().asReadOnlyBuffer());
+
+            final IoBuffer buffer = IoBuffer.allocate(RS2Encoder.getEncodedLength(packet));
+            RS2Encoder.encode(packet, cipher, buffer);
+            blackhole.consume(buffer.flip());
+        }
+    }
+
+}
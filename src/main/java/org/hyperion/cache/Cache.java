@@ -5,13 +5,17 @@ import org.hyperion.cache.index.IndexTable;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Manages the game cache.
+ * <p>
+ * The data file and every index file are mapped read-only once, when the
+ * cache is opened, and files are read from the mappings with absolute gets
+ * only. Any number of threads may therefore read files at the same time.
  *
  * @author Graham Edgecombe
  */
@@ -38,20 +42,42 @@ public class Cache implements Closeable {
     public static final int DATA_SIZE = DATA_BLOCK_SIZE + DATA_HEADER_SIZE;
 
     /**
-     * The data random access file.
+     * The number of blocks in each mapping of the data file. A mapping cannot
+     * be larger than 2 GiB, and a block never spans two mappings.
      */
-    private final RandomAccessFile dataFile;
+    private static final int WINDOW_BLOCKS = Integer.MAX_VALUE / DATA_SIZE;
 
     /**
-     * The index random access files.
+     * The mappings of the data file, each of {@link #WINDOW_BLOCKS} blocks
+     * except the last.
      */
-    private final RandomAccessFile[] indexFiles;
+    private final ByteBuffer[] dataWindows;
+
+    /**
+     * The length of the data file.
+     */
+    private final long dataLength;
+
+    /**
+     * The mappings of the index files.
+     */
+    private final ByteBuffer[] indexBuffers;
 
     /**
      * The index table.
      */
     private final IndexTable indexTable;
 
+    /**
+     * The read statistics of each index.
+     */
+    private final CacheStatistics statistics;
+
+    /**
+     * A flag indicating the cache has been closed.
+     */
+    private volatile boolean closed = false;
+
     /**
      * Creates the cache.
      *
@@ -72,11 +98,22 @@ public class Cache implements Closeable {
             if (count == 0) {
                 throw new InvalidCacheException("No index files present.");
             }
-            indexFiles = new RandomAccessFile[count];
-            dataFile = new RandomAccessFile(directory.getAbsolutePath() + "/main_file_cache.dat", "r");
-            for (int i = 0; i < indexFiles.length; i++) {
-                indexFiles[i] = new RandomAccessFile(directory.getAbsolutePath() + "/main_file_cache.idx" + i, "r");
+            try (final FileChannel channel = FileChannel.open(new File(directory, "main_file_cache.dat").toPath(), StandardOpenOption.READ)) {
+                final long windowSize = (long) WINDOW_BLOCKS * DATA_SIZE;
+                dataLength = channel.size();
+                dataWindows = new ByteBuffer[(int) ((dataLength + windowSize - 1) / windowSize)];
+                for (int i = 0; i < dataWindows.length; i++) {
+                    final long position = i * windowSize;
+                    dataWindows[i] = channel.map(MapMode.READ_ONLY, position, Math.min(windowSize, dataLength - position));
+                }
+            }
+            indexBuffers = new ByteBuffer[count];
+            for (int i = 0; i < indexBuffers.length; i++) {
+                try (final FileChannel channel = FileChannel.open(new File(directory, "main_file_cache.idx" + i).toPath(), StandardOpenOption.READ)) {
+                    indexBuffers[i] = channel.map(MapMode.READ_ONLY, 0, channel.size());
+                }
             }
+            statistics = new CacheStatistics(count);
             indexTable = new IndexTable(this);
         } catch (final IOException ex) {
             throw new InvalidCacheException(ex);
@@ -100,21 +137,42 @@ public class Cache implements Closeable {
      * @return The file.
      * @throws IOException if an I/O error occurs.
      */
-    public CacheFile getFile(int cache, final int file) throws IOException {
-        if (cache < 0 || cache >= indexFiles.length) {
+    public CacheFile getFile(final int cache, final int file) throws IOException {
+        if (closed) {
+            throw new IOException("Cache is closed.");
+        }
+        if (cache < 0 || cache >= indexBuffers.length) {
             throw new IOException("Cache does not exist.");
         }
+        final long start = System.nanoTime();
+        try {
+            final CacheFile cacheFile = readFile(cache, file);
+            statistics.recordRead(cache, cacheFile.getBuffer().remaining(), System.nanoTime() - start);
+            return cacheFile;
+        } catch (final IOException ex) {
+            statistics.recordFailure(cache);
+            throw ex;
+        }
+    }
 
-        final RandomAccessFile indexFile = indexFiles[cache];
+    /**
+     * Reads a file from the mappings.
+     *
+     * @param cache The cache id.
+     * @param file  The file id.
+     * @return The file.
+     * @throws IOException if the file does not exist or is corrupt.
+     */
+    private CacheFile readFile(int cache, final int file) throws IOException {
+        final ByteBuffer index = indexBuffers[cache];
         cache += 1;
 
-        if (file < 0 || file >= (indexFile.length() * INDEX_SIZE)) {
+        if (file < 0 || (long) (file + 1) * INDEX_SIZE > index.capacity()) {
             throw new IOException("File does not exist.");
         }
 
-        final ByteBuffer index = indexFile.getChannel().map(MapMode.READ_ONLY, INDEX_SIZE * file, INDEX_SIZE);
-        final int fileSize = ((index.get() & 0xFF) << 16) | ((index.get() & 0xFF) << 8) | (index.get() & 0xFF);
-        final int fileBlock = ((index.get() & 0xFF) << 16) | ((index.get() & 0xFF) << 8) | (index.get() & 0xFF);
+        final int fileSize = getMedium(index, file * INDEX_SIZE);
+        final int fileBlock = getMedium(index, file * INDEX_SIZE + 3);
 
         int remainingBytes = fileSize;
         int currentBlock = fileBlock;
@@ -123,30 +181,27 @@ public class Cache implements Closeable {
         int cycles = 0;
 
         while (remainingBytes > 0) {
-
-            int size = DATA_SIZE;
-            final int rem = (int) (dataFile.length() - currentBlock * DATA_SIZE);
-            if (rem < DATA_SIZE) {
-                size = rem;
+            if ((long) currentBlock * DATA_SIZE + DATA_HEADER_SIZE > dataLength) {
+                throw new IOException("Block is out of range.");
             }
 
-            final ByteBuffer block = dataFile.getChannel().map(MapMode.READ_ONLY, currentBlock * DATA_SIZE, size);
-            final int nextFileId = block.getShort() & 0xFFFF;
-            final int currentPartId = block.getShort() & 0xFFFF;
-            final int nextBlockId = ((block.get() & 0xFF) << 16) | ((block.get() & 0xFF) << 8) | (block.get() & 0xFF);
-            final int nextCacheId = block.get() & 0xFF;
-
-            size -= 8;
+            final ByteBuffer window = dataWindows[currentBlock / WINDOW_BLOCKS];
+            final int offset = (currentBlock % WINDOW_BLOCKS) * DATA_SIZE;
+            final int nextFileId = window.getShort(offset) & 0xFFFF;
+            final int currentPartId = window.getShort(offset + 2) & 0xFFFF;
+            final int nextBlockId = getMedium(window, offset + 4);
+            final int nextCacheId = window.get(offset + 7) & 0xFF;
 
-            int bytesThisCycle = remainingBytes;
-            if (bytesThisCycle > DATA_BLOCK_SIZE) {
-                bytesThisCycle = DATA_BLOCK_SIZE;
+            final int bytesThisCycle = Math.min(remainingBytes, DATA_BLOCK_SIZE);
+            if (offset + DATA_HEADER_SIZE + bytesThisCycle > window.capacity()) {
+                throw new IOException("Block is truncated.");
             }
 
-            final byte[] temp = new byte[bytesThisCycle];
-            block.get(temp);
-
-            fileBuffer.put(temp, 0, bytesThisCycle);
+            /*
+             * The block is copied straight from the mapping into its place in
+             * the file.
+             */
+            fileBuffer.put(fileSize - remainingBytes, window, offset + DATA_HEADER_SIZE, bytesThisCycle);
 
             remainingBytes -= bytesThisCycle;
 
@@ -166,20 +221,36 @@ public class Cache implements Closeable {
             cycles++;
             currentBlock = nextBlockId;
         }
-        return new CacheFile(cache, file, (ByteBuffer) ((Buffer) fileBuffer).flip());
+        return new CacheFile(cache, file, fileBuffer);
     }
 
     /**
-     * Closes the cache.
+     * Reads a 24-bit integer with an absolute get.
      *
-     * @throws IOException if an I/O error occurs.
+     * @param buf    The buffer.
+     * @param offset The offset.
+     * @return The integer.
+     */
+    private static int getMedium(final ByteBuffer buf, final int offset) {
+        return ((buf.get(offset) & 0xFF) << 16) | ((buf.get(offset + 1) & 0xFF) << 8) | (buf.get(offset + 2) & 0xFF);
+    }
+
+    /**
+     * Gets the read statistics of each index.
+     *
+     * @return The statistics.
+     */
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Closes the cache. The mappings are released once they are no longer
+     * referenced.
      */
     @Override
-    public void close() throws IOException {
-        dataFile.close();
-        for (final RandomAccessFile indexFile : indexFiles) {
-            indexFile.close();
-        }
+    public void close() {
+        closed = true;
     }
 
     /**
@@ -189,7 +260,7 @@ public class Cache implements Closeable {
      * @throws IOException if an I/O error occurs.
      */
     public int getCacheCount() throws IOException {
-        return indexFiles.length;
+        return indexBuffers.length;
     }
 
     /**
@@ -200,10 +271,10 @@ public class Cache implements Closeable {
      * @throws IOException if an I/O error occurs.
      */
     public int getFileCount(final int cache) throws IOException {
-        if (cache < 0 || cache >= indexFiles.length) {
+        if (cache < 0 || cache >= indexBuffers.length) {
             throw new IOException("Cache does not exist.");
         }
-        return (int) (indexFiles[cache].length() / INDEX_SIZE) - 1;
+        return indexBuffers[cache].capacity() / INDEX_SIZE - 1;
     }
 
 }
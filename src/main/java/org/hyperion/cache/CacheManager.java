@@ -0,0 +1,134 @@
+package org.hyperion.cache;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+/**
+ * Holds the single <code>Cache</code> shared by the whole server: the object
+ * loader, the update server and every ondemand worker. The cache is opened
+ * the first time it is needed, and closed when the server shuts down, at
+ * which point its read statistics are logged.
+ * <p>
+ * Files requested by clients are read through a <code>FileCache</code> in
+ * front of the cache, so popular files are kept in memory.
+ * <p>
+ * As the cache only ever reads its mappings with absolute gets, it can be
+ * read by any number of threads at once without locking.
+ */
+public final class CacheManager {
+
+    /**
+     * The directory the cache is stored in.
+     */
+    public static final File CACHE_DIRECTORY = new File("./data/cache/");
+
+    /**
+     * The default budget of the file cache, in bytes.
+     */
+    public static final long DEFAULT_FILE_CACHE_CAPACITY = 64L * 1024 * 1024;
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger logger = Logger.getLogger(CacheManager.class.getName());
+
+    /**
+     * The shared cache, or <code>null</code> if it has not been opened.
+     */
+    private static volatile Cache cache;
+
+    /**
+     * The file cache, or <code>null</code> if it has not been created.
+     */
+    private static volatile FileCache fileCache;
+
+    /**
+     * The budget of the file cache, in bytes.
+     */
+    private static long fileCacheCapacity = DEFAULT_FILE_CACHE_CAPACITY;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private CacheManager() {
+
+    }
+
+    /**
+     * Gets the shared cache, opening it if this is the first call.
+     *
+     * @return The cache.
+     * @throws InvalidCacheException if the cache is corrupt or invalid.
+     */
+    public static Cache getCache() throws InvalidCacheException {
+        Cache current = cache;
+        if (current == null) {
+            synchronized (CacheManager.class) {
+                current = cache;
+                if (current == null) {
+                    current = new Cache(CACHE_DIRECTORY);
+                    cache = current;
+                    Runtime.getRuntime().addShutdownHook(new Thread(CacheManager::close, "CacheManager"));
+                    logger.info("Opened cache with " + current.getStatistics().getIndexCount() + " indices.");
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Gets the file cache in front of the shared cache, creating it if this
+     * is the first call.
+     *
+     * @return The file cache.
+     * @throws InvalidCacheException if the cache is corrupt or invalid.
+     */
+    public static FileCache getFileCache() throws InvalidCacheException {
+        FileCache current = fileCache;
+        if (current == null) {
+            final Cache cache = getCache();
+            synchronized (CacheManager.class) {
+                current = fileCache;
+                if (current == null) {
+                    current = new FileCache(cache, fileCacheCapacity);
+                    fileCache = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Sets the budget of the file cache.
+     *
+     * @param capacity The budget, in bytes, or <code>0</code> to keep no
+     *                 files in memory.
+     */
+    public static synchronized void setFileCacheCapacity(final long capacity) {
+        fileCacheCapacity = capacity;
+        if (fileCache != null) {
+            fileCache.setCapacity(capacity);
+        }
+    }
+
+    /**
+     * Closes the shared cache, if it is open, and logs its read statistics
+     * and those of the file cache. A later call to {@link #getCache()} opens
+     * it again.
+     */
+    public static synchronized void close() {
+        final FileCache currentFiles = fileCache;
+        if (currentFiles != null) {
+            fileCache = null;
+            currentFiles.clear();
+            logger.info("Closed file cache, " + currentFiles);
+        }
+        final Cache current = cache;
+        if (current != null) {
+            cache = null;
+            current.close();
+            logger.info("Closed cache, " + current.getStatistics());
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package org.hyperion.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the files read from each index of a cache, the bytes read, the time
+ * spent reading and the reads which failed. Reads may be recorded and the
+ * counters read from any thread.
+ */
+public class CacheStatistics {
+
+    /**
+     * The number of files read, by index.
+     */
+    private final LongAdder[] reads;
+
+    /**
+     * The number of bytes read, by index.
+     */
+    private final LongAdder[] bytes;
+
+    /**
+     * The time spent reading, in nanoseconds, by index.
+     */
+    private final LongAdder[] time;
+
+    /**
+     * The number of reads which failed, by index.
+     */
+    private final LongAdder[] failures;
+
+    /**
+     * Creates the statistics.
+     *
+     * @param indices The number of indices.
+     */
+    public CacheStatistics(final int indices) {
+        reads = create(indices);
+        bytes = create(indices);
+        time = create(indices);
+        failures = create(indices);
+    }
+
+    /**
+     * Creates an array of counters.
+     *
+     * @param length The length.
+     * @return The counters.
+     */
+    private static LongAdder[] create(final int length) {
+        final LongAdder[] adders = new LongAdder[length];
+        for (int i = 0; i < length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Records a file read.
+     *
+     * @param index The index.
+     * @param size  The size of the file.
+     * @param nanos The time taken, in nanoseconds.
+     */
+    public void recordRead(final int index, final int size, final long nanos) {
+        reads[index].increment();
+        bytes[index].add(size);
+        time[index].add(nanos);
+    }
+
+    /**
+     * Records a read which failed.
+     *
+     * @param index The index.
+     */
+    public void recordFailure(final int index) {
+        failures[index].increment();
+    }
+
+    /**
+     * Gets the number of indices.
+     *
+     * @return The number of indices.
+     */
+    public int getIndexCount() {
+        return reads.length;
+    }
+
+    /**
+     * Gets the number of files read from an index.
+     *
+     * @param index The index.
+     * @return The number of files.
+     */
+    public long getReads(final int index) {
+        return reads[index].sum();
+    }
+
+    /**
+     * Gets the number of bytes read from an index.
+     *
+     * @param index The index.
+     * @return The number of bytes.
+     */
+    public long getBytes(final int index) {
+        return bytes[index].sum();
+    }
+
+    /**
+     * Gets the time spent reading from an index.
+     *
+     * @param index The index.
+     * @return The time, in nanoseconds.
+     */
+    public long getTime(final int index) {
+        return time[index].sum();
+    }
+
+    /**
+     * Gets the number of reads from an index which failed.
+     *
+     * @param index The index.
+     * @return The number of reads.
+     */
+    public long getFailures(final int index) {
+        return failures[index].sum();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder bldr = new StringBuilder();
+        for (int i = 0; i < reads.length; i++) {
+            if (i != 0) {
+                bldr.append(", ");
+            }
+            final long count = getReads(i);
+            bldr.append("idx").append(i).append(" : ").append(count).append(" reads, ").append(getBytes(i)).append(" bytes, ")
+                .append(count == 0 ? 0 : getTime(i) / count / 1000).append(" us avg, ").append(getFailures(i)).append(" failed");
+        }
+        return bldr.toString();
+    }
+
+}
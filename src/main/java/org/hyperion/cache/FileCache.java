@@ -0,0 +1,362 @@
+package org.hyperion.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps the most recently requested files of a <code>Cache</code> in memory,
+ * so the same models, maps and archives requested by thousands of clients
+ * are only read once. Each file may also hold its ondemand response frames,
+ * so they are only encoded once.
+ * <p>
+ * The files and frames of all entries are kept within a budget of bytes.
+ * When it is exceeded, the least recently used entries are evicted. Files
+ * larger than the whole budget are never kept.
+ * <p>
+ * Lookups take a single lock, but files are read and frames encoded outside
+ * it, so the cache may be used by any number of threads. Two threads which
+ * miss the same file at once may both read it, in which case the first copy
+ * is kept.
+ */
+public class FileCache {
+
+    /**
+     * The bytes counted for each entry on top of its data.
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    /**
+     * The reader files are read with.
+     */
+    private final FileReader reader;
+
+    /**
+     * The entries, by key, from least to most recently used.
+     */
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(256, 0.75F, true);
+
+    /**
+     * The budget, in bytes.
+     */
+    private long capacity;
+
+    /**
+     * The bytes used by the entries.
+     */
+    private long size;
+
+    /**
+     * The number of lookups answered from memory.
+     */
+    private long hits;
+
+    /**
+     * The number of lookups which read the file from the cache.
+     */
+    private long misses;
+
+    /**
+     * The number of entries evicted.
+     */
+    private long evictions;
+
+    /**
+     * Creates the file cache.
+     *
+     * @param cache    The cache files are read from.
+     * @param capacity The budget, in bytes.
+     */
+    public FileCache(final Cache cache, final long capacity) {
+        this(cache::getFile, capacity);
+    }
+
+    /**
+     * Creates a file cache which reads files with a reader.
+     *
+     * @param reader   The reader files are read with.
+     * @param capacity The budget, in bytes.
+     */
+    FileCache(final FileReader reader, final long capacity) {
+        this.reader = reader;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets a file.
+     *
+     * @param index The index.
+     * @param file  The file.
+     * @return The file, with a read-only buffer of its own.
+     * @throws IOException if the file could not be read.
+     */
+    public CacheFile getFile(final int index, final int file) throws IOException {
+        final Entry entry = getEntry(index, file);
+        return new CacheFile(index + 1, file, entry.data.asReadOnlyBuffer());
+    }
+
+    /**
+     * Gets the ondemand response frames of a file, encoding them if they are
+     * not in memory. Frames which are kept are copied into direct memory, so
+     * they can be written to a socket without being copied again. Frames
+     * which are not kept are returned as the encoder created them.
+     *
+     * @param index   The index.
+     * @param file    The file.
+     * @param encoder The encoder which creates the frames of the file.
+     * @return The frames, one after another in a single buffer which is
+     * shared and must be duplicated before being read.
+     * @throws IOException if the file could not be read.
+     */
+    public ByteBuffer getFrames(final int index, final int file, final FrameEncoder encoder) throws IOException {
+        final Entry entry = getEntry(index, file);
+        final ByteBuffer existing = entry.frames;
+        if (existing != null) {
+            return existing;
+        }
+        final ByteBuffer frames = encoder.encode(new CacheFile(index + 1, file, entry.data.asReadOnlyBuffer()));
+        final int frameBytes = frames.remaining();
+        final Long key = key(index, file);
+        synchronized (this) {
+            if (entry.frames != null) {
+                return entry.frames;
+            }
+            if (entries.get(key) != entry || entry.size + frameBytes > capacity) {
+                return frames;
+            }
+        }
+
+        /*
+         * The frames are copied outside the lock, as direct memory is slow
+         * to allocate.
+         */
+        final ByteBuffer direct = ByteBuffer.allocateDirect(frameBytes);
+        direct.put(frames.duplicate()).flip();
+        final ByteBuffer kept = direct.asReadOnlyBuffer();
+        synchronized (this) {
+            if (entry.frames != null) {
+                return entry.frames;
+            }
+            if (entries.get(key) == entry) {
+                entry.frames = kept;
+                entry.size += frameBytes;
+                size += frameBytes;
+                evict();
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Gets the entry of a file, reading the file if it is not in memory.
+     *
+     * @param index The index.
+     * @param file  The file.
+     * @return The entry.
+     * @throws IOException if the file could not be read.
+     */
+    private Entry getEntry(final int index, final int file) throws IOException {
+        final Long key = key(index, file);
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry;
+            }
+            misses++;
+        }
+
+        /*
+         * The file is read outside the lock, so other files can be looked up
+         * in the meantime.
+         */
+        final ByteBuffer data = reader.read(index, file).getBuffer().asReadOnlyBuffer();
+        final Entry entry = new Entry(data);
+        synchronized (this) {
+            if (entry.size > capacity) {
+                return entry;
+            }
+            final Entry existing = entries.putIfAbsent(key, entry);
+            if (existing != null) {
+                return existing;
+            }
+            size += entry.size;
+            evict();
+        }
+        return entry;
+    }
+
+    /**
+     * Evicts the least recently used entries until the budget is met. The
+     * lock must be held.
+     */
+    private void evict() {
+        final Iterator<Entry> it = entries.values().iterator();
+        while (size > capacity && it.hasNext()) {
+            size -= it.next().size;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Creates the key of a file.
+     *
+     * @param index The index.
+     * @param file  The file.
+     * @return The key.
+     */
+    private static Long key(final int index, final int file) {
+        return ((long) index << 32) | (file & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sets the budget, evicting entries if it is exceeded.
+     *
+     * @param capacity The budget, in bytes, or <code>0</code> to keep
+     *                 nothing.
+     */
+    public synchronized void setCapacity(final long capacity) {
+        this.capacity = capacity;
+        evict();
+    }
+
+    /**
+     * Evicts every entry.
+     */
+    public synchronized void clear() {
+        evictions += entries.size();
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Gets the budget.
+     *
+     * @return The budget, in bytes.
+     */
+    public synchronized long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the bytes used by the entries.
+     *
+     * @return The number of bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return The number of entries.
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of lookups answered from memory.
+     *
+     * @return The number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups which read the file from the cache.
+     *
+     * @return The number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of entries evicted.
+     *
+     * @return The number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final long lookups = hits + misses;
+        return entries.size() + " files, " + size + "/" + capacity + " bytes, " + hits + " hits, " + misses + " misses ("
+            + (lookups == 0 ? 0 : hits * 100 / lookups) + "% hit rate), " + evictions + " evictions";
+    }
+
+    /**
+     * Reads files for the file cache.
+     */
+    interface FileReader {
+
+        /**
+         * Reads a file.
+         *
+         * @param index The index.
+         * @param file  The file.
+         * @return The file.
+         * @throws IOException if the file could not be read.
+         */
+        CacheFile read(int index, int file) throws IOException;
+
+    }
+
+    /**
+     * Encodes the ondemand response frames of a file.
+     */
+    public interface FrameEncoder {
+
+        /**
+         * Encodes the frames of a file.
+         *
+         * @param file The file.
+         * @return The frames, one after another in a single read-only heap
+         * buffer.
+         */
+        ByteBuffer encode(CacheFile file);
+
+    }
+
+    /**
+     * A file in memory, and its frames once they have been encoded.
+     */
+    private static final class Entry {
+
+        /**
+         * The file's data, which is read-only and only ever duplicated.
+         */
+        private final ByteBuffer data;
+
+        /**
+         * The frames, or <code>null</code> if they have not been encoded.
+         * Guarded by the lock on the file cache, but read without it.
+         */
+        private volatile ByteBuffer frames;
+
+        /**
+         * The bytes counted for the entry. Guarded by the lock on the file
+         * cache.
+         */
+        private int size;
+
+        /**
+         * Creates the entry.
+         *
+         * @param data The file's data.
+         */
+        private Entry(final ByteBuffer data) {
+            this.data = data;
+            this.size = data.capacity() + ENTRY_OVERHEAD;
+        }
+
+    }
+
+}
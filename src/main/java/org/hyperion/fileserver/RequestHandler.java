@@ -1,7 +1,9 @@
 package org.hyperion.fileserver;
 
 import org.hyperion.Server;
-import org.hyperion.cache.Cache;
+import org.hyperion.cache.CacheManager;
+import org.hyperion.cache.FileCache;
+import org.hyperion.cache.InvalidCacheException;
 
 import java.io.File;
 import java.io.IOException;
@@ -33,23 +35,18 @@ public final class RequestHandler {
     private static ByteBuffer crcTable = null;
 
     /**
-     * The cache instance.
-     */
-    private static Cache cache;
-
-    /**
-     * Handles a single request.
+     * Handles a single request. Requests may be handled by several threads at
+     * once, as they all read the shared file cache.
      *
      * @param request The request.
      * @return The response.
      */
-    public static synchronized Response handle(final Request request) {
-        if (cache == null) {
-            try {
-                cache = new Cache(new File("./data/cache/"));
-            } catch (final Exception e) {
-                throw new RuntimeException(e);
-            }
+    public static Response handle(final Request request) {
+        final FileCache cache;
+        try {
+            cache = CacheManager.getFileCache();
+        } catch (final InvalidCacheException e) {
+            throw new RuntimeException(e);
         }
         String path = request.getPath();
         if (path.equals("/")) {
@@ -57,27 +54,24 @@ public final class RequestHandler {
         }
         final String mime = getMimeType(path);
         try {
-            if (crcTable == null) {
-                crcTable = calculateCrcTable();
-            }
             if (path.startsWith("/crc")) {
-                return new Response(crcTable.asReadOnlyBuffer(), mime);
+                return new Response(getCrcTable(cache).asReadOnlyBuffer(), mime);
             } else if (path.startsWith("/title")) {
-                return new Response(cache.getFile(0, 1).getBytes(), mime);
+                return new Response(cache.getFile(0, 1).getBuffer(), mime);
             } else if (path.startsWith("/config")) {
-                return new Response(cache.getFile(0, 2).getBytes(), mime);
+                return new Response(cache.getFile(0, 2).getBuffer(), mime);
             } else if (path.startsWith("/interface")) {
-                return new Response(cache.getFile(0, 3).getBytes(), mime);
+                return new Response(cache.getFile(0, 3).getBuffer(), mime);
             } else if (path.startsWith("/media")) {
-                return new Response(cache.getFile(0, 4).getBytes(), mime);
+                return new Response(cache.getFile(0, 4).getBuffer(), mime);
             } else if (path.startsWith("/versionlist")) {
-                return new Response(cache.getFile(0, 5).getBytes(), mime);
+                return new Response(cache.getFile(0, 5).getBuffer(), mime);
             } else if (path.startsWith("/textures")) {
-                return new Response(cache.getFile(0, 6).getBytes(), mime);
+                return new Response(cache.getFile(0, 6).getBuffer(), mime);
             } else if (path.startsWith("/wordenc")) {
-                return new Response(cache.getFile(0, 7).getBytes(), mime);
+                return new Response(cache.getFile(0, 7).getBuffer(), mime);
             } else if (path.startsWith("/sounds")) {
-                return new Response(cache.getFile(0, 8).getBytes(), mime);
+                return new Response(cache.getFile(0, 8).getBuffer(), mime);
             }
             path = new File(FILES_DIRECTORY + path).getAbsolutePath();
             if (!path.startsWith(FILES_DIRECTORY)) {
@@ -285,16 +279,31 @@ public final class RequestHandler {
         return mime;
     }
 
+    /**
+     * Gets the crc table, calculating it if this is the first call.
+     *
+     * @param cache The cache.
+     * @return The crc table.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static synchronized ByteBuffer getCrcTable(final FileCache cache) throws IOException {
+        if (crcTable == null) {
+            crcTable = calculateCrcTable(cache);
+        }
+        return crcTable;
+    }
+
     /**
      * <p>Calculates the crc table.</p>
      *
      * <p>The following code is based on research into the client (above) and
      * some forum post I found on the web archive.</p>
      *
+     * @param cache The cache.
      * @return The crc table.
      * @throws IOException if an I/O error occurs.
      */
-    private static ByteBuffer calculateCrcTable() throws IOException {
+    private static ByteBuffer calculateCrcTable(final FileCache cache) throws IOException {
         final CRC32 crc = new CRC32();
         final int[] checksums = new int[9];
 
@@ -5,9 +5,14 @@ import org.apache.mina.core.service.IoHandlerAdapter;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.hyperion.rs2.util.IoBufferUtils;
+import org.hyperion.rs2.util.NameUtils;
 import org.hyperion.util.login.LoginCodecFactory;
 import org.hyperion.util.login.LoginPacket;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Handles the login server connections.
  *
@@ -36,11 +41,9 @@ public class LoginConnectionHandler extends IoHandlerAdapter {
 
     @Override
     public void sessionClosed(final IoSession session) throws Exception {
-        server.pushTask(() -> {
-            if (session.containsAttribute("node")) {
-                NodeManager.getNodeManager().unregister((Node) session.getAttribute("node"));
-            }
-        });
+        if (session.containsAttribute("node")) {
+            NodeManager.getNodeManager().unregister((Node) session.getAttribute("node"));
+        }
     }
 
     @Override
@@ -51,13 +54,35 @@ public class LoginConnectionHandler extends IoHandlerAdapter {
 
     @Override
     public void messageReceived(final IoSession session, final Object message) throws Exception {
-        server.pushTask(() -> {
-            if (session.containsAttribute("node")) {
-                ((Node) session.getAttribute("node")).handlePacket((LoginPacket) message);
-            } else {
-                handlePreAuthenticationPacket(session, (LoginPacket) message);
-            }
-        });
+        final LoginPacket packet = (LoginPacket) message;
+        if (session.containsAttribute("node")) {
+            final Node node = (Node) session.getAttribute("node");
+            server.pushTask(getPlayerNames(packet), () -> node.handlePacket(packet));
+        } else {
+            handlePreAuthenticationPacket(session, packet);
+        }
+    }
+
+    /**
+     * Gets the names of the players a packet from a node is for, without
+     * consuming the packet. The name is the first field of every such packet
+     * except a batched save, which holds a name and saved data per player.
+     *
+     * @param packet The packet.
+     * @return The players' names.
+     */
+    private static List<String> getPlayerNames(final LoginPacket packet) {
+        final IoBuffer buf = packet.getPayload().duplicate();
+        if (packet.getOpcode() != LoginPacket.SAVE_BATCH) {
+            return Collections.singletonList(NameUtils.formatNameForProtocol(IoBufferUtils.getRS2String(buf)));
+        }
+        final int count = buf.getUnsignedShort();
+        final List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(NameUtils.formatNameForProtocol(IoBufferUtils.getRS2String(buf)));
+            buf.skip(buf.getUnsignedShort());
+        }
+        return names;
     }
 
     /**
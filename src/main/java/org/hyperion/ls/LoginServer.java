@@ -4,16 +4,23 @@ import org.apache.mina.core.service.IoAcceptor;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
 import org.hyperion.rs2.GenericWorldLoader;
 import org.hyperion.rs2.WorldLoader;
+import org.hyperion.util.KeyedExecutor;
 import org.hyperion.util.NetworkConstants;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * The login server.
+ * <p>
+ * Requests from the nodes are handled in a pool of I/O threads, as they load
+ * and save player files. Requests for the same player are handled in the
+ * order they arrived, and requests for different players in parallel.
  *
  * @author Graham Edgecombe
  */
@@ -30,20 +37,43 @@ public class LoginServer {
     private final IoAcceptor acceptor = new NioSocketAcceptor();
 
     /**
-     * The task queue.
+     * The default number of I/O threads.
      */
-    private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+    public static final int DEFAULT_IO_THREADS = 16;
+
+    /**
+     * The I/O service, which handles requests.
+     */
+    private final ExecutorService ioService;
+
+    /**
+     * The I/O service wrapped so requests for the same player run in order.
+     */
+    private final KeyedExecutor requests;
 
     /**
      * Login server loader.
      */
-    private final WorldLoader loader = new GenericWorldLoader();
+    private final WorldLoader loader;
 
     /**
      * Creates the login server.
      */
     public LoginServer() {
+        this(new GenericWorldLoader(), DEFAULT_IO_THREADS);
+    }
+
+    /**
+     * Creates the login server.
+     *
+     * @param loader    The loader.
+     * @param ioThreads The number of I/O threads.
+     */
+    public LoginServer(final WorldLoader loader, final int ioThreads) {
         logger.info("Starting Hyperion Login Server...");
+        this.loader = loader;
+        this.ioService = Executors.newFixedThreadPool(ioThreads);
+        this.requests = new KeyedExecutor(ioService);
         acceptor.setHandler(new LoginConnectionHandler(this));
     }
 
@@ -62,12 +92,14 @@ public class LoginServer {
      */
     public void start() {
         logger.info("Ready.");
-        while (true) {
-            try {
-                tasks.take().run();
-            } catch (final InterruptedException ignored) {
-            }
-        }
+    }
+
+    /**
+     * Stops accepting connections and shuts down the I/O service.
+     */
+    public void shutdown() {
+        acceptor.dispose();
+        ioService.shutdown();
     }
 
     /**
@@ -83,12 +115,21 @@ public class LoginServer {
     }
 
     /**
-     * Pushses a task onto the queue.
+     * Submits a task to the I/O service, to run after all tasks submitted
+     * earlier with any of the same keys have finished.
      *
+     * @param keys     The keys, e.g. the names of the players the task is
+     *                 for.
      * @param runnable The runnable.
      */
-    public void pushTask(final Runnable runnable) {
-        tasks.add(runnable);
+    public void pushTask(final Collection<?> keys, final Runnable runnable) {
+        requests.execute(keys, () -> {
+            try {
+                runnable.run();
+            } catch (final Throwable t) {
+                logger.log(Level.SEVERE, "Error handling request.", t);
+            }
+        });
     }
 
     /**
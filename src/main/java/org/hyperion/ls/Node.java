@@ -3,18 +3,22 @@ package org.hyperion.ls;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.hyperion.rs2.WorldLoader.LoginResult;
+import org.hyperion.rs2.WorldLoader.SavedGame;
 import org.hyperion.rs2.model.Player;
 import org.hyperion.rs2.model.PlayerDetails;
 import org.hyperion.rs2.util.IoBufferUtils;
 import org.hyperion.rs2.util.NameUtils;
 import org.hyperion.util.login.LoginPacket;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Manages a single node (world).
+ * Manages a single node (world). Packets for different players may be handled
+ * at the same time.
  *
  * @author Graham Edgecombe
  */
@@ -38,7 +42,13 @@ public class Node {
     /**
      * A map of players.
      */
-    private final Map<String, PlayerData> players = new HashMap<>();
+    private final Map<String, PlayerData> players = new ConcurrentHashMap<>();
+
+    /**
+     * A flag indicating the node's session has been closed. Guarded by the
+     * lock on the node.
+     */
+    private boolean closed = false;
 
     /**
      * Creates a node.
@@ -54,14 +64,30 @@ public class Node {
     }
 
     /**
-     * Registers a new player.
+     * Registers a new player, unless the node has been closed.
      *
      * @param player The player to add.
+     * @return <code>true</code> if the player was added, <code>false</code>
+     * if the node has been closed.
      */
-    public void register(final PlayerData player) {
+    public synchronized boolean register(final PlayerData player) {
+        if (closed) {
+            return false;
+        }
         players.put(player.getName(), player);
+        return true;
     }
 
+    /**
+     * Marks the node as closed, so no more players can be registered on it.
+     * Once this returns, every player which was registered is in
+     * {@link #getPlayers()}.
+     */
+    public synchronized void close() {
+        closed = true;
+    }
+
+
     /**
      * Removes an old player.
      *
@@ -120,16 +146,23 @@ public class Node {
                 final String name = NameUtils.formatNameForProtocol(IoBufferUtils.getRS2String(buf));
                 final String password = IoBufferUtils.getRS2String(buf);
                 final LoginResult res = server.getLoader().checkLogin(new PlayerDetails(null, name, password, 0, null, null));
-                if (res.getReturnCode() == 2) {
+                int code = res.getReturnCode();
+                if (code == 2) {
                     final PlayerData pd = new PlayerData(name, res.getPlayer().getRights().toInteger());
-                    NodeManager.getNodeManager().register(pd, this);
+                    if (!NodeManager.getNodeManager().register(pd, this)) {
+                        /*
+                         * The node was closed while the login was checked, so
+                         * the player is not registered and must not log in.
+                         */
+                        code = 8;
+                    }
                 }
                 final IoBuffer resp = IoBuffer.allocate(16);
                 resp.setAutoExpand(true);
                 IoBufferUtils.putRS2String(resp, name);
-                resp.put((byte) res.getReturnCode());
+                resp.put((byte) code);
                 resp.flip();
-                session.write(new LoginPacket(LoginPacket.CHECK_LOGIN_RESPONSE, resp));
+                session.write(new LoginPacket(LoginPacket.CHECK_LOGIN_RESPONSE, packet.getRequestId(), resp));
             }
             case LoginPacket.LOAD -> {
                 final String name = NameUtils.formatNameForProtocol(IoBufferUtils.getRS2String(buf));
@@ -148,25 +181,36 @@ public class Node {
                     resp.put(data);
                 }
                 resp.flip();
-                session.write(new LoginPacket(LoginPacket.LOAD_RESPONSE, resp));
+                session.write(new LoginPacket(LoginPacket.LOAD_RESPONSE, packet.getRequestId(), resp));
             }
             case LoginPacket.SAVE -> {
                 final String name = NameUtils.formatNameForProtocol(IoBufferUtils.getRS2String(buf));
-                final int dataLength = buf.getUnsignedShort();
-                final byte[] data = new byte[dataLength];
-                buf.get(data);
-                final IoBuffer dataBuffer = IoBuffer.allocate(dataLength);
-                dataBuffer.put(data);
-                dataBuffer.flip();
-                final Player p = new Player(new PlayerDetails(null, name, "", 0, null, null));
-                p.deserialize(dataBuffer);
+                final Player p = readPlayer(name, buf);
                 final int code = server.getLoader().savePlayer(p) ? 1 : 0;
                 final IoBuffer resp = IoBuffer.allocate(16);
                 resp.setAutoExpand(true);
                 IoBufferUtils.putRS2String(resp, name);
                 resp.put((byte) code);
                 resp.flip();
-                session.write(new LoginPacket(LoginPacket.SAVE_RESPONSE, resp));
+                session.write(new LoginPacket(LoginPacket.SAVE_RESPONSE, packet.getRequestId(), resp));
+            }
+            case LoginPacket.SAVE_BATCH -> {
+                final int count = buf.getUnsignedShort();
+                final List<SavedGame> games = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    final String name = NameUtils.formatNameForProtocol(IoBufferUtils.getRS2String(buf));
+                    final byte[] data = new byte[buf.getUnsignedShort()];
+                    buf.get(data);
+                    games.add(new SavedGame(name, data));
+                }
+                final boolean[] results = server.getLoader().savePlayers(games);
+                final IoBuffer resp = IoBuffer.allocate(2 + count);
+                resp.putShort((short) count);
+                for (final boolean result : results) {
+                    resp.put((byte) (result ? 1 : 0));
+                }
+                resp.flip();
+                session.write(new LoginPacket(LoginPacket.SAVE_BATCH_RESPONSE, packet.getRequestId(), resp));
             }
             case LoginPacket.DISCONNECT -> {
                 final String name = NameUtils.formatNameForProtocol(IoBufferUtils.getRS2String(buf));
@@ -178,4 +222,23 @@ public class Node {
         }
     }
 
+    /**
+     * Reads a player's saved data, which is prefixed by its length.
+     *
+     * @param name The player's name.
+     * @param buf  The buffer.
+     * @return The player.
+     */
+    private static Player readPlayer(final String name, final IoBuffer buf) {
+        final int dataLength = buf.getUnsignedShort();
+        final byte[] data = new byte[dataLength];
+        buf.get(data);
+        final IoBuffer dataBuffer = IoBuffer.allocate(dataLength);
+        dataBuffer.put(data);
+        dataBuffer.flip();
+        final Player p = new Player(new PlayerDetails(null, name, "", 0, null, null));
+        p.deserialize(dataBuffer);
+        return p;
+    }
+
 }
@@ -5,10 +5,15 @@ import org.hyperion.rs2.util.NameUtils;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
- * Manages all of the nodes in the login server.
+ * Manages all of the nodes in the login server. This may be used from any
+ * thread.
+ * <p>
+ * The map of players to nodes is split into shards by name, each with its
+ * own lock, so requests for different players rarely contend.
  *
  * @author Graham Edgecombe
  */
@@ -19,6 +24,11 @@ public class NodeManager {
      */
     private static final NodeManager INSTANCE = new NodeManager();
 
+    /**
+     * The number of shards of the player map. This must be a power of two.
+     */
+    private static final int SHARDS = 64;
+
     /**
      * Logger instance.
      */
@@ -26,11 +36,22 @@ public class NodeManager {
     /**
      * A map of nodes.
      */
-    private final Map<Integer, Node> nodes = new HashMap<>();
+    private final Map<Integer, Node> nodes = new ConcurrentHashMap<>();
+    /**
+     * The shards of the map of player names to nodes. Each shard is guarded
+     * by its own lock.
+     */
+    @SuppressWarnings("unchecked")
+    private final Map<String, Node>[] players = new Map[SHARDS];
+
     /**
-     * A map of player names to nodes.
+     * Creates the node manager.
      */
-    private final Map<String, Node> players = new HashMap<>();
+    private NodeManager() {
+        for (int i = 0; i < SHARDS; i++) {
+            players[i] = new HashMap<>();
+        }
+    }
 
     /**
      * Gets the node manager instance.
@@ -63,7 +84,21 @@ public class NodeManager {
      * @return The node.
      */
     public Node getPlayersNode(final String player) {
-        return players.get(player);
+        final Map<String, Node> shard = getShard(player);
+        synchronized (shard) {
+            return shard.get(player);
+        }
+    }
+
+    /**
+     * Gets the shard of the player map which holds a player.
+     *
+     * @param player The player name.
+     * @return The shard.
+     */
+    private Map<String, Node> getShard(final String player) {
+        final int hash = player.hashCode();
+        return players[(hash ^ (hash >>> 16)) & (SHARDS - 1)];
     }
 
     /**
@@ -77,15 +112,21 @@ public class NodeManager {
     }
 
     /**
-     * Unregisters a node.
+     * Unregisters a node. The node is closed first, so requests from it which
+     * are still being handled cannot register players on it afterwards. If
+     * another node has since registered with the same id, it is left alone.
      *
      * @param node The node to remove.
      */
     public void unregister(final Node node) {
         logger.info("Unregistering node : World-" + node.getId() + ".");
-        nodes.remove(node.getId());
+        node.close();
+        nodes.remove(node.getId(), node);
         for (final PlayerData p : node.getPlayers()) {
-            players.remove(p.getName());
+            final Map<String, Node> shard = getShard(p.getName());
+            synchronized (shard) {
+                shard.remove(p.getName(), node);
+            }
         }
     }
 
@@ -100,15 +141,24 @@ public class NodeManager {
     }
 
     /**
-     * Registers a player.
+     * Registers a player, unless their node has been closed.
      *
      * @param player The player.
      * @param node   The node.
+     * @return <code>true</code> if the player was registered,
+     * <code>false</code> if the node has been closed.
      */
-    public void register(final PlayerData player, final Node node) {
+    public boolean register(final PlayerData player, final Node node) {
         logger.info("Registering player : " + player.getName() + "...");
-        players.put(player.getName(), node);
-        node.register(player);
+        final Map<String, Node> shard = getShard(player.getName());
+        synchronized (shard) {
+            if (!node.register(player)) {
+                logger.info("Node World-" + node.getId() + " has been closed, not registering player : " + player.getName() + ".");
+                return false;
+            }
+            shard.put(player.getName(), node);
+            return true;
+        }
     }
 
     /**
@@ -118,8 +168,12 @@ public class NodeManager {
      */
     public void unregister(final PlayerData player) {
         logger.info("Unregistering player : " + player.getName() + "...");
-        if (players.containsKey(player.getName())) {
-            players.remove(player.getName()).unregister(player);
+        final Map<String, Node> shard = getShard(player.getName());
+        synchronized (shard) {
+            final Node node = shard.remove(player.getName());
+            if (node != null) {
+                node.unregister(player);
+            }
         }
     }
 
@@ -0,0 +1,256 @@
+package org.hyperion.rs2;
+
+import org.hyperion.rs2.WorldLoader.SavedGame;
+import org.hyperion.rs2.model.Location;
+import org.hyperion.rs2.model.Player;
+import org.hyperion.rs2.model.World;
+import org.hyperion.rs2.util.EntityList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Periodically saves the players who have changed since they were last
+ * saved, so a crash only loses recent progress.
+ * <p>
+ * The player list is swept a slice at a time, one slice per tick, so every
+ * player is checked once per interval and the saves are spread evenly over
+ * it. Each tick the changed players in the slice are serialized on the logic
+ * thread and handed to the work service as a single batch, keyed by their
+ * names so the batch stays ordered with their other loads and saves.
+ * <p>
+ * All methods must be called from the logic thread, but the statistics may be
+ * read from any thread. A summary is logged after every sweep.
+ */
+public class CheckpointService {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger logger = Logger.getLogger(CheckpointService.class.getName());
+
+    /**
+     * The number of ticks in which every player is checked, or
+     * <code>0</code> if checkpoints are disabled.
+     */
+    private int interval = 500;
+
+    /**
+     * The index of the next player slot to check.
+     */
+    private int cursor = 1;
+
+    /**
+     * The number of ticks in the current sweep.
+     */
+    private int sweepTicks;
+
+    /**
+     * The total number of players saved.
+     */
+    private volatile long saved;
+
+    /**
+     * The total number of saves which failed.
+     */
+    private volatile long failed;
+
+    /**
+     * The total number of bytes of serialized player data saved.
+     */
+    private volatile long bytes;
+
+    /**
+     * The time between the last saved player's previous save and their
+     * checkpoint, in nanoseconds.
+     */
+    private volatile long lastLag;
+
+    /**
+     * The longest time between a player's previous save and their checkpoint,
+     * in nanoseconds.
+     */
+    private volatile long maxLag;
+
+    /**
+     * The number of players saved in the current sweep.
+     */
+    private int sweepSaved;
+
+    /**
+     * The number of bytes saved in the current sweep.
+     */
+    private long sweepBytes;
+
+    /**
+     * The longest lag in the current sweep, in nanoseconds.
+     */
+    private long sweepMaxLag;
+
+    /**
+     * Gets the number of ticks in which every player is checked.
+     *
+     * @return The interval, or <code>0</code> if checkpoints are disabled.
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the number of ticks in which every player is checked.
+     *
+     * @param interval The interval, or <code>0</code> to disable
+     *                 checkpoints.
+     */
+    public void setInterval(final int interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Checks the next slice of players, and saves those who have changed.
+     */
+    public void tick() {
+        if (interval <= 0) {
+            return;
+        }
+        final World world = World.getWorld();
+        final EntityList<Player> players = world.getPlayers();
+        final int capacity = players.capacity();
+        final int slice = (capacity + interval - 1) / interval;
+        final long now = System.nanoTime();
+
+        final List<Player> dirty = new ArrayList<>();
+        final List<SavedGame> games = new ArrayList<>();
+        for (int i = 0; i < slice; i++) {
+            final Player player = (Player) players.get(cursor);
+            if (++cursor > capacity) {
+                cursor = 1;
+            }
+            if (player != null && player.isDirty()) {
+                dirty.add(player);
+                games.add(SavedGame.of(player));
+            }
+        }
+        if (!dirty.isEmpty()) {
+            save(world, dirty, games, now);
+        }
+
+        if (++sweepTicks >= interval) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Checkpointed " + sweepSaved + " players, " + sweepBytes + " bytes, max lag : "
+                    + (sweepMaxLag / 1000000) + " ms (" + sweepTicks + " ticks)");
+            }
+            sweepTicks = 0;
+            sweepSaved = 0;
+            sweepBytes = 0;
+            sweepMaxLag = 0;
+        }
+    }
+
+    /**
+     * Saves a batch of players in the work service, and records the result
+     * on the logic thread.
+     *
+     * @param world   The world.
+     * @param players The players.
+     * @param games   The players' saved games.
+     * @param now     The time the players were serialized, in nanoseconds.
+     */
+    private void save(final World world, final List<Player> players, final List<SavedGame> games, final long now) {
+        final int count = players.size();
+        final long[] versions = new long[count];
+        final Location[] locations = new Location[count];
+        final List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            versions[i] = players.get(i).getStateVersion();
+            locations[i] = players.get(i).getLocation();
+            names.add(games.get(i).getName());
+        }
+
+        final GameEngine engine = world.getEngine();
+        engine.submitWork(names, () -> {
+            final boolean[] results = world.getWorldLoader().savePlayers(games);
+            engine.pushTask(context -> {
+                for (int i = 0; i < count; i++) {
+                    final Player player = players.get(i);
+                    if (results[i]) {
+                        record(now - player.getSavedTime(), games.get(i).getData().length);
+                        player.setSaved(versions[i], locations[i], now);
+                    } else {
+                        failed++;
+                        logger.warning("Checkpoint of " + player.getName() + " failed.");
+                    }
+                }
+            });
+        });
+    }
+
+    /**
+     * Records a saved player.
+     *
+     * @param lag   The time since the player's previous save, in
+     *              nanoseconds.
+     * @param bytes The number of bytes saved.
+     */
+    private void record(final long lag, final int bytes) {
+        saved++;
+        this.bytes += bytes;
+        lastLag = lag;
+        if (lag > maxLag) {
+            maxLag = lag;
+        }
+        sweepSaved++;
+        sweepBytes += bytes;
+        sweepMaxLag = Math.max(sweepMaxLag, lag);
+    }
+
+    /**
+     * Gets the total number of players saved.
+     *
+     * @return The number of players.
+     */
+    public long getSaved() {
+        return saved;
+    }
+
+    /**
+     * Gets the total number of saves which failed.
+     *
+     * @return The number of saves.
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Gets the total number of bytes of serialized player data saved.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Gets the time between the last saved player's previous save and their
+     * checkpoint.
+     *
+     * @return The lag, in nanoseconds.
+     */
+    public long getLastLag() {
+        return lastLag;
+    }
+
+    /**
+     * Gets the longest time between a player's previous save and their
+     * checkpoint.
+     *
+     * @return The lag, in nanoseconds.
+     */
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+}
@@ -4,9 +4,12 @@ import org.apache.mina.core.service.IoHandlerAdapter;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.hyperion.rs2.model.Player;
 import org.hyperion.rs2.model.World;
 import org.hyperion.rs2.net.Packet;
+import org.hyperion.rs2.net.PacketManager;
 import org.hyperion.rs2.net.RS2CodecFactory;
+import org.hyperion.rs2.net.ondemand.OnDemandPool;
 import org.hyperion.rs2.task.impl.SessionClosedTask;
 import org.hyperion.rs2.task.impl.SessionMessageTask;
 import org.hyperion.rs2.task.impl.SessionOpenedTask;
@@ -33,6 +36,7 @@ public class ConnectionHandler extends IoHandlerAdapter {
 
     @Override
     public void sessionClosed(final IoSession session) throws Exception {
+        OnDemandPool.getOnDemandPool().sessionClosed(session);
         engine.pushTask(new SessionClosedTask(session));
     }
 
@@ -46,9 +50,29 @@ public class ConnectionHandler extends IoHandlerAdapter {
         session.close(false);
     }
 
+    @Override
+    public void messageSent(final IoSession session, final Object message) throws Exception {
+        /*
+         * Packets built from the buffer pool, including the buffers flushed
+         * by players, return their buffers once they have been sent. Other
+         * messages are never released, as they may not be pooled.
+         */
+        if (message instanceof Packet) {
+            ((Packet) message).release();
+        }
+        OnDemandPool.getOnDemandPool().messageSent(session);
+    }
+
     @Override
     public void messageReceived(final IoSession session, final Object message) throws Exception {
-        engine.pushTask(new SessionMessageTask(session, (Packet) message));
+        final Packet packet = (Packet) message;
+        final PacketManager packetManager = PacketManager.getPacketManager();
+        final Player player = (Player) session.getAttribute("player");
+        if (player != null && packetManager.getDispatchMode() == PacketManager.DispatchMode.TICK) {
+            packetManager.queue(player, packet);
+        } else {
+            engine.pushTask(new SessionMessageTask(session, packet));
+        }
     }
 
 }
@@ -2,55 +2,105 @@ package org.hyperion.rs2;
 
 import org.hyperion.rs2.model.World;
 import org.hyperion.rs2.task.Task;
-import org.hyperion.util.BlockingExecutorService;
+import org.hyperion.util.KeyedExecutor;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutionException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.PriorityQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * The 'core' class of the server which processes all the logic tasks in one
- * single logic <code>ExecutorService</code>. This service is scheduled which
+ * The 'core' class of the server which processes all the logic tasks on one
+ * single logic thread. The logic thread also runs scheduled logic, which
  * means <code>Event</code>s are also submitted to it.
+ * <p>
+ * Tasks are added to a lock-free queue and executed by the logic thread in
+ * batches, directly and in the order they were added. Scheduled logic is kept
+ * in a heap ordered by deadline. When there is nothing to do, the logic thread
+ * parks until the next deadline or until a task is added.
  *
  * @author Graham Edgecombe
  */
 public class GameEngine implements Runnable {
 
+    /**
+     * The maximum number of tasks executed before scheduled logic is checked.
+     */
+    private static final int BATCH_SIZE = 256;
+
     /**
      * A queue of pending tasks.
      */
-    private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+    private final LogicQueue tasks = new LogicQueue();
+
+    /**
+     * The scheduled logic, ordered by deadline. Only used by the logic
+     * thread.
+     */
+    private final PriorityQueue<ScheduledLogic> scheduledLogic = new PriorityQueue<>();
+
+    /**
+     * The number of pieces of logic scheduled so far, used to run logic with
+     * the same deadline in the order it was scheduled. Only used by the logic
+     * thread.
+     */
+    private long scheduledCount = 0;
 
     /**
-     * The logic service.
+     * The default maximum number of threads in the elastic work service.
      */
-    private final ScheduledExecutorService logicService = Executors.newScheduledThreadPool(1);
+    public static final int DEFAULT_WORK_THREADS = 16;
 
     /**
-     * The task service, used by <code>ParallelTask</code>s.
+     * The time an idle thread in the elastic work service is kept alive, in
+     * seconds.
      */
-    private final BlockingExecutorService taskService = new BlockingExecutorService(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
+    private static final long WORK_KEEP_ALIVE = 60;
 
     /**
      * The work service, generally for file I/O and other blocking operations.
      */
-    private final ExecutorService workService = Executors.newSingleThreadExecutor();
+    private volatile ExecutorService workService = Executors.newSingleThreadExecutor();
+
+    /**
+     * The work service wrapped so work with the same key runs in order.
+     */
+    private volatile KeyedExecutor keyedWorkService = new KeyedExecutor(workService);
+
+    /**
+     * The kind of work service.
+     */
+    private volatile WorkService workServiceType = WorkService.SINGLE;
+
+    /**
+     * The tick scheduler, which runs the world tick on the logic thread.
+     */
+    private final TickScheduler tickScheduler = new TickScheduler(this);
+
+    /**
+     * The update pipeline, which runs the update cycle.
+     */
+    private final UpdatePipeline updatePipeline = new UpdatePipeline(Runtime.getRuntime().availableProcessors());
 
     /**
      * Running flag.
      */
-    private boolean running = false;
+    private volatile boolean running = false;
+
+    /**
+     * A flag indicating the logic thread is parked, or about to park.
+     */
+    private volatile boolean parked = false;
 
     /**
      * Thread instance.
      */
-    private Thread thread;
+    private volatile Thread thread;
 
     /**
      * Submits a new task which is processed on the logic thread as soon as
@@ -60,6 +110,89 @@ public class GameEngine implements Runnable {
      */
     public void pushTask(final Task task) {
         tasks.offer(task);
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Gets the queue of pending tasks, whose depth and latency may be read
+     * from any thread.
+     *
+     * @return The task queue.
+     */
+    public LogicQueue getTaskQueue() {
+        return tasks;
+    }
+
+    /**
+     * Gets the tick scheduler.
+     *
+     * @return The tick scheduler.
+     */
+    public TickScheduler getTickScheduler() {
+        return tickScheduler;
+    }
+
+    /**
+     * Gets the executor which runs the phases of the update pipeline.
+     *
+     * @return The task executor.
+     */
+    public TaskExecutor getTaskExecutor() {
+        return updatePipeline.getExecutor();
+    }
+
+    /**
+     * Sets the executor which runs the phases of the update pipeline. This
+     * must be called before the engine is started.
+     *
+     * @param taskExecutor The task executor.
+     * @throws IllegalStateException if the engine has been started.
+     */
+    public void setTaskExecutor(final TaskExecutor taskExecutor) {
+        updatePipeline.setExecutor(taskExecutor);
+    }
+
+    /**
+     * Gets the kind of work service.
+     *
+     * @return The kind of work service.
+     */
+    public WorkService getWorkService() {
+        return workServiceType;
+    }
+
+    /**
+     * Replaces the work service. This should only be called before the engine
+     * is started, while no work is pending.
+     *
+     * @param type    The kind of work service.
+     * @param threads The maximum number of threads of an elastic work
+     *                service.
+     */
+    public void setWorkService(final WorkService type, final int threads) {
+        final ExecutorService service;
+        if (type == WorkService.ELASTIC) {
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, WORK_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            pool.allowCoreThreadTimeOut(true);
+            service = pool;
+        } else {
+            service = Executors.newSingleThreadExecutor();
+        }
+        workService.shutdown();
+        workService = service;
+        keyedWorkService = new KeyedExecutor(service);
+        workServiceType = type;
+    }
+
+    /**
+     * Gets the update pipeline.
+     *
+     * @return The update pipeline.
+     */
+    public UpdatePipeline getUpdatePipeline() {
+        return updatePipeline;
     }
 
     /**
@@ -79,6 +212,7 @@ public class GameEngine implements Runnable {
             throw new IllegalStateException("The engine is already running.");
         }
         running = true;
+        updatePipeline.start();
         thread = new Thread(this);
         thread.start();
     }
@@ -91,66 +225,120 @@ public class GameEngine implements Runnable {
             throw new IllegalStateException("The engine is already stopped.");
         }
         running = false;
-        thread.interrupt();
+        LockSupport.unpark(thread);
     }
 
     @Override
     public void run() {
         try {
             while (running) {
-                try {
-                    final Task task = tasks.take();
-                    submitLogic(() -> task.execute(GameEngine.this));
-                } catch (final InterruptedException ignored) {
+                /*
+                 * Execute a batch of tasks, then any scheduled logic which is
+                 * due, so a flood of tasks cannot hold back the tick.
+                 */
+                int executed = 0;
+                Task task;
+                while (executed < BATCH_SIZE && (task = tasks.poll()) != null) {
+                    execute(task);
+                    executed++;
+                }
+                runScheduledLogic();
+                if (executed == BATCH_SIZE) {
+                    continue;
                 }
+
+                /*
+                 * The flag is set before the queue is checked again, so a
+                 * task added after the check always unparks this thread.
+                 */
+                parked = true;
+                if (running && tasks.isEmpty()) {
+                    final ScheduledLogic next = scheduledLogic.peek();
+                    if (next == null) {
+                        LockSupport.park(this);
+                    } else {
+                        final long delay = next.deadline - System.nanoTime();
+                        if (delay > 0) {
+                            LockSupport.parkNanos(this, delay);
+                        }
+                    }
+                }
+                parked = false;
             }
         } finally {
-            logicService.shutdown();
-            taskService.shutdown();
+            /*
+             * The pipeline is stopped here so it cannot happen in the middle
+             * of a cycle.
+             */
+            updatePipeline.shutdown();
             workService.shutdown();
         }
     }
 
     /**
-     * Submits a task to run in the logic service.
+     * Executes a task on the logic thread.
      *
-     * @param runnable The runnable.
+     * @param task The task.
      */
-    public void submitLogic(final Runnable runnable) {
-        logicService.submit(() -> {
+    private void execute(final Task task) {
+        try {
+            task.execute(this);
+        } catch (final Throwable t) {
+            World.getWorld().handleError(t);
+        }
+    }
+
+    /**
+     * Runs the scheduled logic whose deadline has passed, in order of
+     * deadline.
+     */
+    private void runScheduledLogic() {
+        final long now = System.nanoTime();
+        ScheduledLogic next;
+        while ((next = scheduledLogic.peek()) != null && next.deadline - now <= 0) {
+            scheduledLogic.poll();
             try {
-                runnable.run();
+                next.runnable.run();
             } catch (final Throwable t) {
                 World.getWorld().handleError(t);
             }
-        });
+        }
     }
 
     /**
-     * Schedules a task to run in the logic service.
+     * Submits a task to run on the logic thread.
+     *
+     * @param runnable The runnable.
+     */
+    public void submitLogic(final Runnable runnable) {
+        pushTask(context -> runnable.run());
+    }
+
+    /**
+     * Schedules a task to run on the logic thread. The delay is measured from
+     * the time this method is called, even if it is called from another
+     * thread.
      *
      * @param runnable The runnable.
      * @param delay    The delay.
      * @param unit     The time unit.
-     * @return The <code>ScheduledFuture</code> of the scheduled logic.
      */
-    public ScheduledFuture<?> scheduleLogic(final Runnable runnable, final long delay, final TimeUnit unit) {
-        return logicService.schedule(() -> {
-            try {
-                runnable.run();
-            } catch (final Throwable t) {
-                World.getWorld().handleError(t);
-            }
-        }, delay, unit);
+    public void scheduleLogic(final Runnable runnable, final long delay, final TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(delay);
+        if (Thread.currentThread() == thread) {
+            scheduledLogic.add(new ScheduledLogic(runnable, deadline, scheduledCount++));
+        } else {
+            pushTask(context -> scheduledLogic.add(new ScheduledLogic(runnable, deadline, scheduledCount++)));
+        }
     }
 
     /**
-     * Submits a task to run in the parallel task service.
+     * Submits a task to run in the work service.
      *
      * @param runnable The runnable.
      */
-    public void submitTask(final Runnable runnable) {
-        taskService.submit(() -> {
+    public void submitWork(final Runnable runnable) {
+        workService.submit(() -> {
             try {
                 runnable.run();
             } catch (final Throwable t) {
@@ -160,12 +348,26 @@ public class GameEngine implements Runnable {
     }
 
     /**
-     * Submits a task to run in the work service.
+     * Submits a task to run in the work service after all work submitted
+     * earlier with the same key, e.g. a player's name, has finished. Work
+     * with different keys may run at the same time.
      *
+     * @param key      The key.
      * @param runnable The runnable.
      */
-    public void submitWork(final Runnable runnable) {
-        workService.submit(() -> {
+    public void submitWork(final Object key, final Runnable runnable) {
+        submitWork(Collections.singleton(key), runnable);
+    }
+
+    /**
+     * Submits a task to run in the work service after all work submitted
+     * earlier with any of the same keys has finished.
+     *
+     * @param keys     The keys.
+     * @param runnable The runnable.
+     */
+    public void submitWork(final Collection<?> keys, final Runnable runnable) {
+        keyedWorkService.execute(keys, () -> {
             try {
                 runnable.run();
             } catch (final Throwable t) {
@@ -175,12 +377,85 @@ public class GameEngine implements Runnable {
     }
 
     /**
-     * Waits for pending parallel tasks.
-     *
-     * @throws ExecutionException If an error occurred during a task.
+     * A piece of logic scheduled to run on the logic thread.
      */
-    public void waitForPendingParallelTasks() throws ExecutionException {
-        taskService.waitForPendingTasks();
+    private static final class ScheduledLogic implements Comparable<ScheduledLogic> {
+
+        /**
+         * The logic.
+         */
+        private final Runnable runnable;
+
+        /**
+         * The time the logic is due, in nanoseconds.
+         */
+        private final long deadline;
+
+        /**
+         * The order in which the logic was scheduled.
+         */
+        private final long sequence;
+
+        /**
+         * Creates the scheduled logic.
+         *
+         * @param runnable The logic.
+         * @param deadline The time the logic is due, in nanoseconds.
+         * @param sequence The order in which the logic was scheduled.
+         */
+        private ScheduledLogic(final Runnable runnable, final long deadline, final long sequence) {
+            this.runnable = runnable;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final ScheduledLogic other) {
+            final long difference = deadline - other.deadline;
+            if (difference != 0) {
+                return difference < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+    }
+
+    /**
+     * The executors which the phases of the update pipeline can run in.
+     */
+    public enum TaskExecutor {
+
+        /**
+         * A fixed set of worker threads, which claim items from a shared
+         * counter.
+         */
+        FIXED,
+
+        /**
+         * A work-stealing fork/join pool. Each phase is split into chunks
+         * which idle threads steal from busy ones.
+         */
+        FORK_JOIN
+
+    }
+
+    /**
+     * The kinds of work service.
+     */
+    public enum WorkService {
+
+        /**
+         * A single thread, which runs all work in order.
+         */
+        SINGLE,
+
+        /**
+         * A bounded pool of threads which are started as work arrives and
+         * stopped when idle, so blocking work for one player does not hold
+         * back the others. Work for the same player still runs in order.
+         */
+        ELASTIC
+
     }
 
 }
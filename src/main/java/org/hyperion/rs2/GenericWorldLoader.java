@@ -6,12 +6,23 @@ import org.hyperion.rs2.model.PlayerDetails;
 import org.hyperion.rs2.util.NameUtils;
 import org.hyperion.util.Streams;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -24,6 +35,11 @@ import java.util.zip.GZIPOutputStream;
  */
 public class GenericWorldLoader implements WorldLoader {
 
+    /**
+     * Logger instance.
+     */
+    private static final Logger logger = Logger.getLogger(GenericWorldLoader.class.getName());
+
     @Override
     public LoginResult checkLogin(final PlayerDetails pd) {
         Player player = null;
@@ -76,20 +92,127 @@ public class GenericWorldLoader implements WorldLoader {
 
     @Override
     public boolean savePlayer(final Player player) {
+        return savePlayers(Collections.singletonList(SavedGame.of(player)))[0];
+    }
+
+    @Override
+    public boolean[] savePlayers(final List<SavedGame> games) {
+        final boolean[] results = new boolean[games.size()];
+        final byte[][] files = new byte[games.size()][];
+        final Path[] paths = new Path[games.size()];
+        final Path[] temps = new Path[games.size()];
+        final FileChannel[] channels = new FileChannel[games.size()];
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /*
+         * Every game is compressed to its own array before any file is
+         * written, so the files are then written back to back.
+         */
+        for (int i = 0; i < files.length; i++) {
+            bytes.reset();
+            try (final OutputStream os = new GZIPOutputStream(bytes)) {
+                os.write(games.get(i).getData());
+            } catch (final IOException ex) {
+                logger.log(Level.WARNING, "Failed to compress the game of " + games.get(i).getName() + ".", ex);
+                continue;
+            }
+            files[i] = bytes.toByteArray();
+        }
+
+        /*
+         * Each game is written to a temporary file next to its old one. The
+         * old file is only replaced once every new file is on disk, so a
+         * crash part way through leaves either the old game or the new one.
+         */
+        for (int i = 0; i < files.length; i++) {
+            if (files[i] == null) {
+                continue;
+            }
+            paths[i] = Paths.get("data/savedGames/" + games.get(i).getName() + ".dat.gz");
+            temps[i] = paths[i].resolveSibling(paths[i].getFileName() + ".tmp");
+            try {
+                channels[i] = FileChannel.open(temps[i], StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                final ByteBuffer buf = ByteBuffer.wrap(files[i]);
+                while (buf.hasRemaining()) {
+                    channels[i].write(buf);
+                }
+            } catch (final IOException ex) {
+                discard(games.get(i).getName(), channels[i], temps[i], ex);
+                channels[i] = null;
+            }
+        }
+
+        /*
+         * The temporary files are then synced in one pass, so the disk
+         * flushes happen together rather than once per rename.
+         */
+        for (int i = 0; i < channels.length; i++) {
+            if (channels[i] == null) {
+                continue;
+            }
+            try {
+                channels[i].force(true);
+                channels[i].close();
+            } catch (final IOException ex) {
+                discard(games.get(i).getName(), channels[i], temps[i], ex);
+                channels[i] = null;
+            }
+        }
+
+        /*
+         * Finally every synced file replaces its old game.
+         */
+        boolean moved = false;
+        for (int i = 0; i < channels.length; i++) {
+            if (channels[i] == null) {
+                continue;
+            }
+            try {
+                Files.move(temps[i], paths[i], StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                results[i] = true;
+                moved = true;
+            } catch (final IOException ex) {
+                discard(games.get(i).getName(), null, temps[i], ex);
+            }
+        }
+        if (moved) {
+            syncDirectory(Paths.get("data/savedGames"));
+        }
+        return results;
+    }
+
+    /**
+     * Logs a failed save and removes its temporary file.
+     *
+     * @param name    The player's name.
+     * @param channel The temporary file's channel, or <code>null</code> if it
+     *                is not open.
+     * @param temp    The temporary file.
+     * @param ex      The cause of the failure.
+     */
+    private void discard(final String name, final FileChannel channel, final Path temp, final IOException ex) {
+        logger.log(Level.WARNING, "Failed to save the game of " + name + ".", ex);
         try {
-            final OutputStream os = new GZIPOutputStream(new FileOutputStream("data/savedGames/" + NameUtils.formatNameForProtocol(player.getName()) + ".dat.gz"));
-            final IoBuffer buf = IoBuffer.allocate(1024);
-            buf.setAutoExpand(true);
-            player.serialize(buf);
-            buf.flip();
-            final byte[] data = new byte[buf.limit()];
-            buf.get(data);
-            os.write(data);
-            os.flush();
-            os.close();
-            return true;
+            if (channel != null) {
+                channel.close();
+            }
+            Files.deleteIfExists(temp);
+        } catch (final IOException ex2) {
+            logger.log(Level.WARNING, "Failed to remove " + temp + ".", ex2);
+        }
+    }
+
+    /**
+     * Syncs a directory so the renames made in it are on disk. Not every
+     * platform can open a directory, so a failure here is only logged.
+     *
+     * @param dir The directory.
+     */
+    private void syncDirectory(final Path dir) {
+        try (final FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
         } catch (final IOException ex) {
-            return false;
+            logger.log(Level.FINE, "Failed to sync " + dir + ".", ex);
         }
     }
 
@@ -0,0 +1,195 @@
+package org.hyperion.rs2;
+
+import org.hyperion.rs2.task.Task;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A queue of tasks waiting to be executed on the logic thread. Any number of
+ * threads may add tasks, but only the logic thread may take them.
+ * <p>
+ * The queue is a linked list of nodes. Adding a task swaps the tail with a
+ * single atomic operation and never blocks, and taking a task only follows
+ * the head's link, so producers never wait for each other or the consumer.
+ * <p>
+ * Each node records when its task was added, so the time tasks spend waiting
+ * is measured without allocating anything else.
+ */
+public class LogicQueue {
+
+    /**
+     * The node before the next task to be taken. Only used by the consumer.
+     */
+    private Node head;
+
+    /**
+     * The last node added.
+     */
+    private final AtomicReference<Node> tail;
+
+    /**
+     * The total number of tasks added.
+     */
+    private final LongAdder added = new LongAdder();
+
+    /**
+     * The total number of tasks taken.
+     */
+    private volatile long taken;
+
+    /**
+     * The total time taken tasks spent in the queue, in nanoseconds.
+     */
+    private volatile long totalLatency;
+
+    /**
+     * The time the last taken task spent in the queue, in nanoseconds.
+     */
+    private volatile long lastLatency;
+
+    /**
+     * The longest time a taken task spent in the queue, in nanoseconds.
+     */
+    private volatile long maxLatency;
+
+    /**
+     * Creates an empty logic queue.
+     */
+    public LogicQueue() {
+        head = new Node(null, 0);
+        tail = new AtomicReference<>(head);
+    }
+
+    /**
+     * Adds a task. This may be called from any thread.
+     *
+     * @param task The task.
+     */
+    public void offer(final Task task) {
+        final Node node = new Node(task, System.nanoTime());
+        final Node previous = tail.getAndSet(node);
+
+        /*
+         * Between the swap and this write the consumer cannot see the new
+         * node yet, and treats the queue as ending at the previous one.
+         */
+        previous.next = node;
+        added.increment();
+    }
+
+    /**
+     * Takes the next task. This must only be called from the logic thread.
+     *
+     * @return The task, or <code>null</code> if the queue is empty.
+     */
+    public Task poll() {
+        final Node next = head.next;
+        if (next == null) {
+            return null;
+        }
+        final Task task = next.task;
+        next.task = null;
+        head = next;
+
+        final long latency = System.nanoTime() - next.time;
+        lastLatency = latency;
+        totalLatency += latency;
+        if (latency > maxLatency) {
+            maxLatency = latency;
+        }
+        taken++;
+        return task;
+    }
+
+    /**
+     * Checks if the queue is empty. This must only be called from the logic
+     * thread.
+     *
+     * @return <code>true</code> if so, <code>false</code> if not.
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+    /**
+     * Gets the number of tasks waiting in the queue. The result is only an
+     * estimate while tasks are being added.
+     *
+     * @return The queue depth.
+     */
+    public long getDepth() {
+        return Math.max(0, added.sum() - taken);
+    }
+
+    /**
+     * Gets the total number of tasks taken from the queue.
+     *
+     * @return The number of tasks.
+     */
+    public long getTaken() {
+        return taken;
+    }
+
+    /**
+     * Gets the time the last taken task spent in the queue.
+     *
+     * @return The latency, in nanoseconds.
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * Gets the average time taken tasks spent in the queue.
+     *
+     * @return The latency, in nanoseconds.
+     */
+    public long getAverageLatency() {
+        final long taken = this.taken;
+        return taken == 0 ? 0 : totalLatency / taken;
+    }
+
+    /**
+     * Gets the longest time a taken task spent in the queue.
+     *
+     * @return The latency, in nanoseconds.
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * A node in the queue.
+     */
+    private static final class Node {
+
+        /**
+         * The task, or <code>null</code> once it has been taken.
+         */
+        private Task task;
+
+        /**
+         * The time the task was added, in nanoseconds.
+         */
+        private final long time;
+
+        /**
+         * The next node.
+         */
+        private volatile Node next;
+
+        /**
+         * Creates a node.
+         *
+         * @param task The task.
+         * @param time The time the task was added.
+         */
+        private Node(final Task task, final long time) {
+            this.task = task;
+            this.time = time;
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.hyperion.rs2;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the time players take from the start of their login in the work
+ * service to being registered in the world. Latencies are recorded by the
+ * logic thread and may be read from any thread.
+ * <p>
+ * The last {@link #SAMPLES} latencies are kept to compute percentiles, and a
+ * summary is logged every {@link #WINDOW} logins.
+ */
+public class LoginStatistics {
+
+    /**
+     * The number of latencies kept to compute percentiles.
+     */
+    public static final int SAMPLES = 1024;
+
+    /**
+     * The number of logins in a logging window.
+     */
+    public static final int WINDOW = 100;
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger logger = Logger.getLogger(LoginStatistics.class.getName());
+
+    /**
+     * The last latencies, in nanoseconds, used as a ring.
+     */
+    private final long[] samples = new long[SAMPLES];
+
+    /**
+     * The total number of logins.
+     */
+    private long logins;
+
+    /**
+     * The longest latency, in nanoseconds.
+     */
+    private long maxLatency;
+
+    /**
+     * Records a login.
+     *
+     * @param latency The time between the start of the login and the player
+     *                being registered, in nanoseconds.
+     */
+    public synchronized void record(final long latency) {
+        samples[(int) (logins % SAMPLES)] = latency;
+        logins++;
+        if (latency > maxLatency) {
+            maxLatency = latency;
+        }
+
+        if (logins % WINDOW == 0 && logger.isLoggable(Level.FINE)) {
+            logger.fine("Login latency p50 : " + toMillis(getPercentile(50)) + " ms, p90 : " + toMillis(getPercentile(90))
+                + " ms, p99 : " + toMillis(getPercentile(99)) + " ms, max : " + toMillis(maxLatency) + " ms (" + logins + " logins)");
+        }
+    }
+
+    /**
+     * Gets a percentile of the last {@link #SAMPLES} latencies.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The latency, in nanoseconds, or <code>0</code> if there have
+     * been no logins.
+     */
+    public synchronized long getPercentile(final double percentile) {
+        final int count = (int) Math.min(logins, SAMPLES);
+        if (count == 0) {
+            return 0;
+        }
+        final long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        final int index = (int) Math.ceil(percentile / 100D * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * Converts nanoseconds to fractional milliseconds.
+     *
+     * @param nanos The time in nanoseconds.
+     * @return The time in milliseconds.
+     */
+    private static double toMillis(final long nanos) {
+        return (double) nanos / 1000000D;
+    }
+
+    /**
+     * Gets the total number of logins.
+     *
+     * @return The number of logins.
+     */
+    public synchronized long getLogins() {
+        return logins;
+    }
+
+    /**
+     * Gets the longest latency.
+     *
+     * @return The latency, in nanoseconds.
+     */
+    public synchronized long getMaxLatency() {
+        return maxLatency;
+    }
+
+}
@@ -3,6 +3,7 @@ package org.hyperion.rs2;
 import org.apache.mina.core.service.IoAcceptor;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
 import org.hyperion.rs2.model.World;
+import org.hyperion.rs2.net.ondemand.OnDemandPool;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
@@ -84,6 +85,7 @@ public class RS2Server {
             World.getWorld().getBackgroundLoader().waitForPendingTasks();
         }
         World.getWorld().getBackgroundLoader().shutdown();
+        OnDemandPool.getOnDemandPool().start();
         engine.start();
         logger.info("Ready");
     }
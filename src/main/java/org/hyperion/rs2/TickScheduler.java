@@ -0,0 +1,204 @@
+package org.hyperion.rs2;
+
+import org.hyperion.rs2.event.Event;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the world tick at a fixed rate on the logic thread.
+ * <p>
+ * Deadlines are laid out on a fixed grid measured with
+ * <code>System.nanoTime()</code>, so a tick which starts late does not push
+ * every following tick back. If a tick finishes after the next deadline has
+ * already passed, the {@link Policy} decides whether the missed ticks are run
+ * back-to-back or dropped.
+ */
+public class TickScheduler {
+
+    /**
+     * The default maximum number of missed ticks which are caught up.
+     */
+    public static final int DEFAULT_MAX_CATCH_UP_TICKS = 5;
+
+    /**
+     * The <code>GameEngine</code> the tick runs in.
+     */
+    private final GameEngine engine;
+
+    /**
+     * The tick statistics.
+     */
+    private final TickStatistics statistics = new TickStatistics();
+
+    /**
+     * The policy applied when ticks are missed.
+     */
+    private volatile Policy policy = Policy.CATCH_UP;
+
+    /**
+     * The maximum number of missed ticks which are caught up.
+     */
+    private volatile int maxCatchUpTicks = DEFAULT_MAX_CATCH_UP_TICKS;
+
+    /**
+     * The tick event.
+     */
+    private Event tick;
+
+    /**
+     * The deadline of the next tick, in nanoseconds.
+     */
+    private long deadline;
+
+    /**
+     * Creates the tick scheduler.
+     *
+     * @param engine The game engine the tick runs in.
+     */
+    public TickScheduler(final GameEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Starts running the specified event as the world tick. The event's delay
+     * is used as the tick period.
+     *
+     * @param tick The tick event.
+     * @throws IllegalStateException if a tick has already been started.
+     */
+    public void start(final Event tick) {
+        if (this.tick != null) {
+            throw new IllegalStateException("The tick scheduler has already been started.");
+        }
+        this.tick = tick;
+        this.deadline = System.nanoTime() + getPeriod();
+        schedule();
+    }
+
+    /**
+     * Gets the tick period.
+     *
+     * @return The tick period, in nanoseconds.
+     */
+    private long getPeriod() {
+        return TimeUnit.MILLISECONDS.toNanos(tick.getDelay());
+    }
+
+    /**
+     * Schedules the next tick at the current deadline.
+     */
+    private void schedule() {
+        final long delay = Math.max(0, deadline - System.nanoTime());
+        engine.scheduleLogic(this::run, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs a single tick, records its statistics and schedules the next one.
+     */
+    private void run() {
+        if (!tick.isRunning()) {
+            return;
+        }
+        final long period = getPeriod();
+        final long start = System.nanoTime();
+        final long lateness = start - deadline;
+
+        tick.execute();
+
+        final long end = System.nanoTime();
+        final long duration = end - start;
+
+        /*
+         * Move onto the next deadline of the grid, and work out how many
+         * deadlines have already passed while this tick was running.
+         */
+        deadline += period;
+        long skipped = 0;
+        final long behind = end - deadline;
+        if (behind >= 0) {
+            final long missed = behind / period + 1;
+            if (policy == Policy.SKIP) {
+                skipped = missed;
+            } else if (missed > maxCatchUpTicks) {
+                skipped = missed - maxCatchUpTicks;
+            }
+            deadline += skipped * period;
+        }
+
+        statistics.record(duration, Math.max(0, lateness), duration > period, skipped);
+        schedule();
+    }
+
+    /**
+     * Gets the tick statistics.
+     *
+     * @return The tick statistics.
+     */
+    public TickStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Gets the policy applied when ticks are missed.
+     *
+     * @return The policy.
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sets the policy applied when ticks are missed.
+     *
+     * @param policy The policy.
+     */
+    public void setPolicy(final Policy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Gets the maximum number of missed ticks which are caught up when the
+     * policy is {@link Policy#CATCH_UP}.
+     *
+     * @return The maximum number of missed ticks which are caught up.
+     */
+    public int getMaxCatchUpTicks() {
+        return maxCatchUpTicks;
+    }
+
+    /**
+     * Sets the maximum number of missed ticks which are caught up when the
+     * policy is {@link Policy#CATCH_UP}. Any further missed ticks are
+     * skipped.
+     *
+     * @param maxCatchUpTicks The maximum number of missed ticks.
+     * @throws IllegalArgumentException if the value is negative.
+     */
+    public void setMaxCatchUpTicks(final int maxCatchUpTicks) {
+        if (maxCatchUpTicks < 0) {
+            throw new IllegalArgumentException("Maximum catch up ticks must be positive.");
+        }
+        this.maxCatchUpTicks = maxCatchUpTicks;
+    }
+
+    /**
+     * The policy applied when a tick overruns and one or more deadlines are
+     * missed.
+     */
+    public enum Policy {
+
+        /**
+         * Missed ticks are run back-to-back until the scheduler is back on
+         * its grid, up to the maximum number of catch up ticks.
+         */
+        CATCH_UP,
+
+        /**
+         * Missed ticks are dropped and the next tick runs at the next
+         * deadline on the grid.
+         */
+        SKIP
+
+    }
+
+}
@@ -0,0 +1,213 @@
+package org.hyperion.rs2;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects timing statistics for the world tick. Statistics are recorded by
+ * the logic thread and may be read from any thread.
+ * <p>
+ * A summary is logged every {@link #WINDOW} ticks. The summary is logged as a
+ * warning if any tick in the window overran its period or was skipped.
+ */
+public class TickStatistics {
+
+    /**
+     * The number of ticks in a logging window.
+     */
+    public static final int WINDOW = 100;
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger logger = Logger.getLogger(TickStatistics.class.getName());
+
+    /**
+     * The total number of ticks.
+     */
+    private volatile long ticks;
+
+    /**
+     * The total number of ticks which took longer than the tick period.
+     */
+    private volatile long overruns;
+
+    /**
+     * The total number of skipped ticks.
+     */
+    private volatile long skipped;
+
+    /**
+     * The duration of the last tick, in nanoseconds.
+     */
+    private volatile long lastDuration;
+
+    /**
+     * The lateness of the last tick, in nanoseconds.
+     */
+    private volatile long lastLateness;
+
+    /**
+     * The longest tick duration, in nanoseconds.
+     */
+    private volatile long maxDuration;
+
+    /**
+     * The greatest tick lateness, in nanoseconds.
+     */
+    private volatile long maxLateness;
+
+    /**
+     * The number of ticks in the current window.
+     */
+    private int windowTicks;
+
+    /**
+     * The total duration of the current window, in nanoseconds.
+     */
+    private long windowDuration;
+
+    /**
+     * The longest tick duration in the current window, in nanoseconds.
+     */
+    private long windowMaxDuration;
+
+    /**
+     * The greatest tick lateness in the current window, in nanoseconds.
+     */
+    private long windowMaxLateness;
+
+    /**
+     * The number of overruns in the current window.
+     */
+    private int windowOverruns;
+
+    /**
+     * The number of skipped ticks in the current window.
+     */
+    private long windowSkipped;
+
+    /**
+     * Records a tick.
+     *
+     * @param duration The time the tick took to execute, in nanoseconds.
+     * @param lateness The time between the tick's deadline and its start, in
+     *                 nanoseconds.
+     * @param overrun  A flag indicating the tick took longer than the period.
+     * @param skipped  The number of ticks skipped after this tick.
+     */
+    public void record(final long duration, final long lateness, final boolean overrun, final long skipped) {
+        ticks++;
+        lastDuration = duration;
+        lastLateness = lateness;
+        if (duration > maxDuration) {
+            maxDuration = duration;
+        }
+        if (lateness > maxLateness) {
+            maxLateness = lateness;
+        }
+        if (overrun) {
+            overruns++;
+        }
+        this.skipped += skipped;
+
+        windowTicks++;
+        windowDuration += duration;
+        windowMaxDuration = Math.max(windowMaxDuration, duration);
+        windowMaxLateness = Math.max(windowMaxLateness, lateness);
+        if (overrun) {
+            windowOverruns++;
+        }
+        windowSkipped += skipped;
+
+        if (windowTicks >= WINDOW) {
+            final Level level = windowOverruns > 0 || windowSkipped > 0 ? Level.WARNING : Level.FINE;
+            if (logger.isLoggable(level)) {
+                logger.log(level, "Tick average : " + toMillis(windowDuration / windowTicks) + " ms, max : " + toMillis(windowMaxDuration)
+                    + " ms, max lateness : " + toMillis(windowMaxLateness) + " ms, overruns : " + windowOverruns
+                    + ", skipped : " + windowSkipped + " (over " + windowTicks + " ticks)");
+            }
+            windowTicks = 0;
+            windowDuration = 0;
+            windowMaxDuration = 0;
+            windowMaxLateness = 0;
+            windowOverruns = 0;
+            windowSkipped = 0;
+        }
+    }
+
+    /**
+     * Converts nanoseconds to fractional milliseconds.
+     *
+     * @param nanos The time in nanoseconds.
+     * @return The time in milliseconds.
+     */
+    private static double toMillis(final long nanos) {
+        return (double) nanos / 1000000D;
+    }
+
+    /**
+     * Gets the total number of ticks.
+     *
+     * @return The total number of ticks.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Gets the number of ticks which took longer than the tick period.
+     *
+     * @return The number of overruns.
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * Gets the number of ticks which were skipped.
+     *
+     * @return The number of skipped ticks.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Gets the duration of the last tick.
+     *
+     * @return The duration, in nanoseconds.
+     */
+    public long getLastDuration() {
+        return lastDuration;
+    }
+
+    /**
+     * Gets the lateness of the last tick, i.e. the time between its deadline
+     * and the time it actually started.
+     *
+     * @return The lateness, in nanoseconds.
+     */
+    public long getLastLateness() {
+        return lastLateness;
+    }
+
+    /**
+     * Gets the longest tick duration.
+     *
+     * @return The longest duration, in nanoseconds.
+     */
+    public long getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * Gets the greatest tick lateness.
+     *
+     * @return The greatest lateness, in nanoseconds.
+     */
+    public long getMaxLateness() {
+        return maxLateness;
+    }
+
+}
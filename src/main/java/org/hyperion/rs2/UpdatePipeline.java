@@ -0,0 +1,609 @@
+package org.hyperion.rs2;
+
+import org.hyperion.rs2.model.Entity;
+import org.hyperion.rs2.model.NPC;
+import org.hyperion.rs2.model.Player;
+import org.hyperion.rs2.model.World;
+import org.hyperion.rs2.model.region.RegionCoordinates;
+import org.hyperion.rs2.model.region.RegionManager;
+import org.hyperion.rs2.task.impl.NPCResetTask;
+import org.hyperion.rs2.task.impl.NPCTickTask;
+import org.hyperion.rs2.task.impl.NPCUpdateTask;
+import org.hyperion.rs2.task.impl.PlayerResetTask;
+import org.hyperion.rs2.task.impl.PlayerTickTask;
+import org.hyperion.rs2.task.impl.PlayerUpdateTask;
+import org.hyperion.rs2.util.EntityList;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tick, prepare, update and reset phases of the update cycle over
+ * every player and NPC in the world.
+ * <p>
+ * No objects are created per entity: the players and NPCs are copied into
+ * arrays which are reused every cycle, and each phase is split into items,
+ * such as a chunk of players, which are claimed by the threads running it.
+ * The logic thread waits for every phase to finish before it moves on.
+ * <p>
+ * With the fixed executor, the pipeline owns a set of worker threads which
+ * live for as long as the engine. The logic thread takes part in every phase
+ * as well, and all of the threads meet at a <code>Phaser</code> before and
+ * after each phase, claiming items from a shared counter. With the fork/join
+ * executor, each phase is instead split into chunks which the threads of a
+ * <code>ForkJoinPool</code> steal from each other.
+ * <p>
+ * When ticks are partitioned, the entities are sorted into buckets by
+ * region once per cycle, and the buckets are split into four groups by the
+ * parity of the region's coordinates. The groups are ticked one
+ * after another, and each bucket in a group is ticked by a single thread. No
+ * two regions in a group are adjacent, so an entity is never ticked at the
+ * same time as an entity in a neighbouring region. Moves between regions are
+ * deferred while the tick phase runs and are merged afterwards in the
+ * consecutive order.
+ */
+public class UpdatePipeline {
+
+    /**
+     * The number of entities claimed by a thread at a time.
+     */
+    private static final int CHUNK_SIZE = 16;
+
+    /**
+     * The number of region groups.
+     */
+    private static final int GROUPS = 4;
+
+    /**
+     * The number of bits of a tick key which hold the entity's index.
+     */
+    private static final int INDEX_BITS = 20;
+
+    /**
+     * The mask of the entity's index in a tick key.
+     */
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    /**
+     * The number of queued chunks a fork/join thread may have before it stops
+     * splitting its chunk any further.
+     */
+    private static final int MAX_SURPLUS_CHUNKS = 2;
+
+    /**
+     * The number of threads taking part in each phase, including the logic
+     * thread.
+     */
+    private final int parties;
+
+    /**
+     * The executor which runs the phases.
+     */
+    private GameEngine.TaskExecutor executor = GameEngine.TaskExecutor.FIXED;
+
+    /**
+     * The worker threads, if the executor is fixed and the pipeline has been
+     * started.
+     */
+    private Thread[] workers;
+
+    /**
+     * The phaser the logic thread and workers meet at, if the executor is
+     * fixed and the pipeline has been started.
+     */
+    private Phaser phaser;
+
+    /**
+     * The fork/join pool, if the executor is fork/join and the pipeline has
+     * been started.
+     */
+    private ForkJoinPool forkJoinPool;
+
+    /**
+     * The index of the next item to be claimed in the current phase.
+     */
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    /**
+     * The players taking part in the current cycle.
+     */
+    private final Player[] players = new Player[Constants.MAX_PLAYERS];
+
+    /**
+     * The NPCs taking part in the current cycle.
+     */
+    private final NPC[] npcs = new NPC[Constants.MAX_NPCS];
+
+    /**
+     * The number of players taking part in the current cycle.
+     */
+    private int playerCount;
+
+    /**
+     * The number of NPCs taking part in the current cycle.
+     */
+    private int npcCount;
+
+    /**
+     * The entities of a partitioned tick, sorted by group and region. Each key
+     * holds the group, the region's coordinates and the entity's index, where
+     * the NPCs come before the players.
+     */
+    private final long[] tickKeys = new long[Constants.MAX_NPCS + Constants.MAX_PLAYERS];
+
+    /**
+     * The index in {@link #tickKeys} at which each bucket starts, followed by
+     * the number of keys.
+     */
+    private final int[] bucketStarts = new int[Constants.MAX_NPCS + Constants.MAX_PLAYERS + 1];
+
+    /**
+     * The first bucket of each group, followed by the number of buckets.
+     */
+    private final int[] groupStarts = new int[GROUPS + 1];
+
+    /**
+     * The current phase.
+     */
+    private Phase phase;
+
+    /**
+     * The region group being ticked, if the current phase is
+     * {@link Phase#PARTITIONED_TICK}.
+     */
+    private int group;
+
+    /**
+     * The first error thrown in the current phase.
+     */
+    private volatile Throwable error;
+
+    /**
+     * Creates the update pipeline.
+     *
+     * @param parties The number of threads which take part in each phase,
+     *                including the logic thread.
+     * @throws IllegalArgumentException if the number of threads is less than
+     *                                  one.
+     */
+    public UpdatePipeline(final int parties) {
+        if (parties < 1) {
+            throw new IllegalArgumentException("The pipeline needs at least one thread.");
+        }
+        this.parties = parties;
+    }
+
+    /**
+     * Gets the executor which runs the phases.
+     *
+     * @return The executor.
+     */
+    public GameEngine.TaskExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor which runs the phases. This must be called before the
+     * pipeline is started.
+     *
+     * @param executor The executor.
+     * @throws IllegalStateException if the pipeline has been started.
+     */
+    public void setExecutor(final GameEngine.TaskExecutor executor) {
+        if (workers != null || forkJoinPool != null) {
+            throw new IllegalStateException("The pipeline has already been started.");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the worker threads, or the fork/join pool.
+     */
+    public void start() {
+        if (executor == GameEngine.TaskExecutor.FORK_JOIN) {
+            forkJoinPool = new ForkJoinPool(parties);
+            return;
+        }
+        phaser = new Phaser(parties);
+        workers = new Thread[parties - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::work, "UpdatePipeline-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Stops the worker threads, or the fork/join pool. This must be called
+     * from the logic thread, or once the logic thread has stopped running
+     * cycles.
+     */
+    public void shutdown() {
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdown();
+        } else if (phaser != null) {
+            this.phase = Phase.STOP;
+            phaser.arriveAndAwaitAdvance();
+        }
+    }
+
+    /**
+     * Runs a whole update cycle. This must be called from the logic thread.
+     *
+     * @param partitioned A flag indicating the tick phase is partitioned by
+     *                    region.
+     */
+    public void cycle(final boolean partitioned) {
+        collect();
+        try {
+            if (partitioned) {
+                tickPartitioned();
+            } else {
+                for (int i = 0; i < npcCount; i++) {
+                    NPCTickTask.tick(npcs[i]);
+                }
+                for (int i = 0; i < playerCount; i++) {
+                    PlayerTickTask.tick(players[i]);
+                }
+            }
+            runPhase(Phase.PREPARE);
+            runPhase(Phase.UPDATE);
+            runPhase(Phase.RESET);
+        } finally {
+            Arrays.fill(players, 0, playerCount, null);
+            Arrays.fill(npcs, 0, npcCount, null);
+            playerCount = 0;
+            npcCount = 0;
+        }
+    }
+
+    /**
+     * Copies the NPCs and connected players into the cycle's arrays, and
+     * removes any players which have disconnected.
+     */
+    private void collect() {
+        final EntityList<NPC> npcList = World.getWorld().getNPCs();
+        for (int i = 0; i < npcList.size(); i++) {
+            npcs[npcCount++] = npcList.getAt(i);
+        }
+
+        final EntityList<Player> playerList = World.getWorld().getPlayers();
+        int i = 0;
+        while (i < playerList.size()) {
+            final Player player = playerList.getAt(i);
+            if (player.getSession().isConnected()) {
+                players[playerCount++] = player;
+                i++;
+            } else {
+                /*
+                 * The last player is moved into this position, so it is
+                 * checked next.
+                 */
+                playerList.remove(player);
+            }
+        }
+    }
+
+    /**
+     * Sorts the entities into buckets by region, and the buckets into groups,
+     * so each region is looked up once per cycle.
+     */
+    private void bucket() {
+        final int total = npcCount + playerCount;
+        for (int i = 0; i < total; i++) {
+            final Entity entity = i < npcCount ? npcs[i] : players[i - npcCount];
+            final RegionCoordinates coordinates = entity.getRegion().getCoordinates();
+            final long x = coordinates.getX() & 0xFFFF;
+            final long y = coordinates.getY() & 0xFFFF;
+            final long group = (x & 1) | ((y & 1) << 1);
+            tickKeys[i] = (group << (INDEX_BITS + 32)) | (x << (INDEX_BITS + 16)) | (y << INDEX_BITS) | i;
+        }
+
+        /*
+         * Sorting by key groups the entities by group and then region, and
+         * keeps them in the consecutive order within a region.
+         */
+        Arrays.sort(tickKeys, 0, total);
+
+        int buckets = 0;
+        int group = 0;
+        long previous = -1;
+        for (int i = 0; i < total; i++) {
+            final long region = tickKeys[i] >>> INDEX_BITS;
+            if (region != previous) {
+                final int regionGroup = (int) (region >>> 32);
+                while (group < regionGroup) {
+                    groupStarts[++group] = buckets;
+                }
+                bucketStarts[buckets++] = i;
+                previous = region;
+            }
+        }
+        while (group < GROUPS) {
+            groupStarts[++group] = buckets;
+        }
+        bucketStarts[buckets] = total;
+    }
+
+    /**
+     * Runs the tick phase one region group at a time, then merges the
+     * deferred moves between regions.
+     */
+    private void tickPartitioned() {
+        bucket();
+        final RegionManager regionManager = World.getWorld().getRegionManager();
+        regionManager.setDeferringRegionChanges(true);
+        try {
+            for (int i = 0; i < GROUPS; i++) {
+                group = i;
+                runPhase(Phase.PARTITIONED_TICK);
+            }
+        } finally {
+            regionManager.setDeferringRegionChanges(false);
+        }
+
+        /*
+         * Merge the moves between regions in the consecutive order.
+         */
+        for (int i = 0; i < npcCount; i++) {
+            if (npcs[i].isRegionChangeDeferred()) {
+                npcs[i].updateRegion();
+            }
+        }
+        for (int i = 0; i < playerCount; i++) {
+            if (players[i].isRegionChangeDeferred()) {
+                players[i].updateRegion();
+            }
+        }
+        regionManager.mergeDeferredRegionChanges();
+    }
+
+    /**
+     * Runs a phase on the logic thread and every worker, or in the fork/join
+     * pool, and waits for it to finish.
+     *
+     * @param phase The phase.
+     * @throws RuntimeException if any thread failed during the phase.
+     */
+    private void runPhase(final Phase phase) {
+        this.phase = phase;
+        cursor.set(0);
+        error = null;
+
+        if (forkJoinPool != null) {
+            forkJoinPool.invoke(new ChunkAction(0, getItemCount(), null));
+        } else if (phaser != null) {
+            /*
+             * The phaser's barriers publish the fields above to the workers,
+             * and the workers' results back to this thread.
+             */
+            phaser.arriveAndAwaitAdvance();
+            execute();
+            phaser.arriveAndAwaitAdvance();
+        } else {
+            execute();
+        }
+
+        final Throwable t = error;
+        if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * The main loop of a worker thread.
+     */
+    private void work() {
+        while (true) {
+            phaser.arriveAndAwaitAdvance();
+            if (phase == Phase.STOP) {
+                phaser.arriveAndDeregister();
+                return;
+            }
+            execute();
+            phaser.arriveAndAwaitAdvance();
+        }
+    }
+
+    /**
+     * Claims items of the current phase until none are left. A region bucket
+     * is claimed on its own, and players and NPCs in chunks.
+     */
+    private void execute() {
+        final int count = getItemCount();
+        final int chunk = phase == Phase.PARTITIONED_TICK ? 1 : CHUNK_SIZE;
+        int start;
+        while ((start = cursor.getAndAdd(chunk)) < count) {
+            execute(start, Math.min(start + chunk, count));
+        }
+    }
+
+    /**
+     * Gets the number of items in the current phase.
+     *
+     * @return The number of items.
+     */
+    private int getItemCount() {
+        switch (phase) {
+            case PARTITIONED_TICK:
+                return groupStarts[group + 1] - groupStarts[group];
+            case PREPARE:
+            case UPDATE:
+                return playerCount;
+            case RESET:
+                return npcCount + playerCount;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Executes a range of items of the current phase.
+     *
+     * @param start The first item.
+     * @param end   The item after the last.
+     */
+    private void execute(final int start, final int end) {
+        try {
+            for (int i = start; i < end; i++) {
+                switch (phase) {
+                    case PARTITIONED_TICK:
+                        tick(groupStarts[group] + i);
+                        break;
+                    case PREPARE:
+                        PlayerUpdateTask.prepare(players[i]);
+                        break;
+                    case UPDATE:
+                        /*
+                         * Each player is flushed after their updates, so
+                         * everything written to them during the cycle is sent
+                         * in one write.
+                         */
+                        PlayerUpdateTask.update(players[i]);
+                        NPCUpdateTask.update(players[i]);
+                        players[i].flush();
+                        break;
+                    case RESET:
+                        if (i < npcCount) {
+                            NPCResetTask.reset(npcs[i]);
+                        } else {
+                            PlayerResetTask.reset(players[i - npcCount]);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (final Throwable t) {
+            if (error == null) {
+                error = t;
+            }
+        }
+    }
+
+    /**
+     * Ticks every entity in a region bucket, in the consecutive order.
+     *
+     * @param bucket The bucket.
+     */
+    private void tick(final int bucket) {
+        for (int i = bucketStarts[bucket]; i < bucketStarts[bucket + 1]; i++) {
+            final int index = (int) (tickKeys[i] & INDEX_MASK);
+            if (index < npcCount) {
+                NPCTickTask.tick(npcs[index]);
+            } else {
+                PlayerTickTask.tick(players[index - npcCount]);
+            }
+        }
+    }
+
+    /**
+     * A chunk of the items of the current phase, executed in the fork/join
+     * pool.
+     * <p>
+     * A chunk is split in half only while the thread running it has little
+     * other work queued. A busy pool therefore runs large chunks with little
+     * overhead, while an idle pool keeps splitting so that every thread has
+     * something to steal.
+     */
+    private final class ChunkAction extends RecursiveAction {
+
+        /**
+         * The serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The first item in this chunk.
+         */
+        private final int start;
+
+        /**
+         * The item after the last in this chunk.
+         */
+        private final int end;
+
+        /**
+         * The chunk forked off by the same parent before this one, if any.
+         */
+        private final ChunkAction next;
+
+        /**
+         * Creates a chunk.
+         *
+         * @param start The first item.
+         * @param end   The item after the last.
+         * @param next  The chunk forked off by the same parent before this
+         *              one, or <code>null</code>.
+         */
+        private ChunkAction(final int start, final int end, final ChunkAction next) {
+            this.start = start;
+            this.end = end;
+            this.next = next;
+        }
+
+        @Override
+        protected void compute() {
+            int end = this.end;
+            ChunkAction forked = null;
+            /*
+             * Fork off the upper half of the chunk while it is worth doing,
+             * and run whatever is left on this thread.
+             */
+            while (end - start > 1 && getSurplusQueuedTaskCount() <= MAX_SURPLUS_CHUNKS) {
+                final int middle = (start + end) >>> 1;
+                forked = new ChunkAction(middle, end, forked);
+                forked.fork();
+                end = middle;
+            }
+            execute(start, end);
+
+            /*
+             * Join the forked chunks, most recent first. A chunk which has
+             * not been stolen is run by this thread.
+             */
+            while (forked != null) {
+                forked.join();
+                forked = forked.next;
+            }
+        }
+
+    }
+
+    /**
+     * The phases of an update cycle which are run by the workers.
+     */
+    private enum Phase {
+
+        /**
+         * Ticks the entities in one region group.
+         */
+        PARTITIONED_TICK,
+
+        /**
+         * Builds the update blocks shared by every player who can see a
+         * player.
+         */
+        PREPARE,
+
+        /**
+         * Sends the player and NPC updates, and flushes each player.
+         */
+        UPDATE,
+
+        /**
+         * Resets the entities after the update.
+         */
+        RESET,
+
+        /**
+         * Stops the workers.
+         */
+        STOP
+
+    }
+
+}
@@ -1,7 +1,11 @@
 package org.hyperion.rs2;
 
+import org.apache.mina.core.buffer.IoBuffer;
 import org.hyperion.rs2.model.Player;
 import org.hyperion.rs2.model.PlayerDetails;
+import org.hyperion.rs2.util.NameUtils;
+
+import java.util.List;
 
 /**
  * An interface which describes the methods for loading persistent world
@@ -36,6 +40,15 @@ public interface WorldLoader {
      */
     boolean savePlayer(Player player);
 
+    /**
+     * Saves several players' already serialized information at once.
+     *
+     * @param games The saved games.
+     * @return The result of each save, in the order of the saved games:
+     * <code>true</code> on success, <code>false</code> on failure.
+     */
+    boolean[] savePlayers(List<SavedGame> games);
+
     /**
      * Represents the result of a login request.
      *
@@ -93,4 +106,68 @@ public interface WorldLoader {
 
     }
 
+    /**
+     * A player's serialized information, which can be saved on any thread
+     * while the player carries on changing.
+     */
+    class SavedGame {
+
+        /**
+         * The player's name, formatted for the protocol.
+         */
+        private final String name;
+
+        /**
+         * The serialized information.
+         */
+        private final byte[] data;
+
+        /**
+         * Creates a saved game.
+         *
+         * @param name The player's name, formatted for the protocol.
+         * @param data The serialized information.
+         */
+        public SavedGame(final String name, final byte[] data) {
+            this.name = name;
+            this.data = data;
+        }
+
+        /**
+         * Serializes a player's information. This must be called on the
+         * thread which owns the player.
+         *
+         * @param player The player.
+         * @return The saved game.
+         */
+        public static SavedGame of(final Player player) {
+            final IoBuffer buf = IoBuffer.allocate(1024);
+            buf.setAutoExpand(true);
+            player.serialize(buf);
+            buf.flip();
+            final byte[] data = new byte[buf.remaining()];
+            buf.get(data);
+            return new SavedGame(NameUtils.formatNameForProtocol(player.getName()), data);
+        }
+
+        /**
+         * Gets the player's name, formatted for the protocol.
+         *
+         * @return The name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the serialized information.
+         *
+         * @return The data.
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+    }
+
 }
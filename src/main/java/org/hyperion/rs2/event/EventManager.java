@@ -47,9 +47,9 @@ public class EventManager {
             if (!event.isRunning()) {
                 return;
             }
-            final long start = System.currentTimeMillis();
+            final long start = System.nanoTime();
             event.execute();
-            final long elapsed = System.currentTimeMillis() - start;
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
             long remaining = event.getDelay() - elapsed;
             if (remaining <= 0) {
                 remaining = 0;
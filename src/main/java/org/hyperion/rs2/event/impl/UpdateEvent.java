@@ -1,25 +1,12 @@
 package org.hyperion.rs2.event.impl;
 
 import org.hyperion.rs2.event.Event;
-import org.hyperion.rs2.model.NPC;
-import org.hyperion.rs2.model.Player;
 import org.hyperion.rs2.model.World;
-import org.hyperion.rs2.task.ConsecutiveTask;
-import org.hyperion.rs2.task.ParallelTask;
-import org.hyperion.rs2.task.Task;
-import org.hyperion.rs2.task.impl.NPCResetTask;
-import org.hyperion.rs2.task.impl.NPCTickTask;
-import org.hyperion.rs2.task.impl.NPCUpdateTask;
-import org.hyperion.rs2.task.impl.PlayerResetTask;
-import org.hyperion.rs2.task.impl.PlayerTickTask;
-import org.hyperion.rs2.task.impl.PlayerUpdateTask;
-
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import org.hyperion.rs2.net.PacketManager;
 
 /**
- * An event which starts player update tasks.
+ * An event which runs the player and NPC tick, update and reset phases. It
+ * is run at a fixed rate by the <code>TickScheduler</code>.
  *
  * @author Graham Edgecombe
  */
@@ -30,6 +17,11 @@ public class UpdateEvent extends Event {
      */
     public static final int CYCLE_TIME = 600;
 
+    /**
+     * The tick mode.
+     */
+    private volatile TickMode tickMode = TickMode.SERIAL;
+
     /**
      * Creates the update event to cycle every 600 milliseconds.
      */
@@ -37,35 +29,57 @@ public class UpdateEvent extends Event {
         super(CYCLE_TIME);
     }
 
+    /**
+     * Gets the tick mode.
+     *
+     * @return The tick mode.
+     */
+    public TickMode getTickMode() {
+        return tickMode;
+    }
+
+    /**
+     * Sets the tick mode.
+     *
+     * @param tickMode The tick mode.
+     */
+    public void setTickMode(final TickMode tickMode) {
+        this.tickMode = tickMode;
+    }
+
     @Override
     public void execute() {
-        final List<Task> tickTasks = new ArrayList<>();
-        final List<Task> updateTasks = new ArrayList<>();
-        final List<Task> resetTasks = new ArrayList<>();
-
-        for (final NPC npc : World.getWorld().getNPCs()) {
-            tickTasks.add(new NPCTickTask(npc));
-            resetTasks.add(new NPCResetTask(npc));
+        /*
+         * This event is run by the tick scheduler on the logic thread, so
+         * the cycle is executed directly. This lets the scheduler measure how
+         * long the cycle really took. If packets are queued per player, they
+         * are handled first so the tick sees their effects. A slice of the
+         * players is checkpointed last, once the tick's changes are made.
+         */
+        final PacketManager packetManager = PacketManager.getPacketManager();
+        if (packetManager.getDispatchMode() == PacketManager.DispatchMode.TICK) {
+            packetManager.handleQueuedPackets(World.getWorld().getPlayers());
         }
+        World.getWorld().getEngine().getUpdatePipeline().cycle(tickMode == TickMode.PARTITIONED);
+        World.getWorld().getCheckpointService().tick();
+    }
 
-        final Iterator<Player> it$ = World.getWorld().getPlayers().iterator();
-        while (it$.hasNext()) {
-            final Player player = it$.next();
-            if (player.getSession().isConnected()) {
-                tickTasks.add(new PlayerTickTask(player));
-                updateTasks.add(new ConsecutiveTask(new PlayerUpdateTask(player), new NPCUpdateTask(player)));
-                resetTasks.add(new PlayerResetTask(player));
-            } else {
-                it$.remove();
-            }
-        }
+    /**
+     * The ways in which the tick tasks can be executed.
+     */
+    public enum TickMode {
+
+        /**
+         * All tick tasks are executed consecutively on the logic thread.
+         */
+        SERIAL,
 
-        // ticks can no longer be parallel due to region code
-        final Task tickTask = new ConsecutiveTask(tickTasks.toArray(new Task[0]));
-        final Task updateTask = new ParallelTask(updateTasks.toArray(new Task[0]));
-        final Task resetTask = new ParallelTask(resetTasks.toArray(new Task[0]));
+        /**
+         * Tick tasks are partitioned by region, and non-adjacent regions are
+         * ticked simultaneously by the update pipeline's workers.
+         */
+        PARTITIONED
 
-        World.getWorld().submit(new ConsecutiveTask(tickTask, updateTask, resetTask));
     }
 
 }
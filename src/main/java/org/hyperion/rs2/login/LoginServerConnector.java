@@ -8,6 +8,7 @@ import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.transport.socket.nio.NioSocketConnector;
 import org.hyperion.rs2.WorldLoader.LoginResult;
+import org.hyperion.rs2.WorldLoader.SavedGame;
 import org.hyperion.rs2.model.Player;
 import org.hyperion.rs2.model.PlayerDetails;
 import org.hyperion.rs2.model.World;
@@ -18,14 +19,31 @@ import org.hyperion.util.login.LoginCodecFactory;
 import org.hyperion.util.login.LoginPacket;
 
 import java.net.InetSocketAddress;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * <p>The <code>LoginServerConnector</code> manages the communication between
  * the game server and the login server.</p>
  *
+ * <p>Every request is given a unique id, which the login server copies into
+ * its response, and returns a <code>CompletableFuture</code> which is
+ * completed when the response arrives. Any number of requests may be in
+ * flight on the session at once.</p>
+ *
+ * <p>Requests which have not been answered are kept until they time out. If
+ * the connection is lost, they are sent again once the connector has
+ * reconnected and authenticated.</p>
+ *
  * @author Graham Edgecombe
  */
 public class LoginServerConnector extends IoHandlerAdapter {
@@ -35,6 +53,11 @@ public class LoginServerConnector extends IoHandlerAdapter {
      */
     private static final Logger logger = Logger.getLogger(LoginServerConnector.class.getName());
 
+    /**
+     * The delay between connection attempts, in seconds.
+     */
+    private static final long RECONNECT_DELAY = 5;
+
     /**
      * The connector.
      */
@@ -45,17 +68,17 @@ public class LoginServerConnector extends IoHandlerAdapter {
      */
     private final String address;
     /**
-     * Check login results.
+     * The requests which have not been answered, by id.
      */
-    private final Map<String, Integer> checkLoginResults = new HashMap<>();
+    private final Map<Integer, Request> pendingRequests = new ConcurrentHashMap<>();
     /**
-     * Player load results.
+     * The id of the next request.
      */
-    private final Map<String, IoBuffer> playerLoadResults = new HashMap<>();
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
     /**
-     * Player save results.
+     * The time after which a request fails, in milliseconds.
      */
-    private final Map<String, Boolean> playerSaveResults = new HashMap<>();
+    private volatile long timeout = 10000;
     /**
      * The login server password.
      */
@@ -67,11 +90,11 @@ public class LoginServerConnector extends IoHandlerAdapter {
     /**
      * The client session.
      */
-    private IoSession session;
+    private volatile IoSession session;
     /**
      * Authenticated flag.
      */
-    private boolean authenticated = false;
+    private volatile boolean authenticated = false;
 
     /**
      * Creates the login server connector.
@@ -98,11 +121,40 @@ public class LoginServerConnector extends IoHandlerAdapter {
      * @return <code>true</code> if so, <code>false</code> if not.
      */
     public boolean isConnected() {
+        final IoSession session = this.session;
         return session != null && session.isConnected();
     }
 
     /**
-     * Connects to the server.
+     * Gets the time after which a request fails.
+     *
+     * @return The timeout, in milliseconds.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the time after which a request fails.
+     *
+     * @param timeout The timeout, in milliseconds.
+     */
+    public void setTimeout(final long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Gets the number of requests which have not been answered.
+     *
+     * @return The number of requests.
+     */
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Connects to the server. This does not block: if the connection fails,
+     * another attempt is made after {@link #RECONNECT_DELAY} seconds.
      *
      * @param password The password.
      * @param node     The node id.
@@ -112,23 +164,40 @@ public class LoginServerConnector extends IoHandlerAdapter {
         this.node = node;
         logger.info("Connecting to login server : " + address + ":" + NetworkConstants.LOGIN_PORT + "...");
         final ConnectFuture cf = connector.connect(new InetSocketAddress(address, NetworkConstants.LOGIN_PORT));
-        cf.awaitUninterruptibly();
-        if (!cf.isConnected() && (session == null || !session.isConnected())) {
-            logger.severe("Connection to login server failed. Retrying...");
-            // this stops stack overflow errors
-            World.getWorld().getEngine().submitLogic(() -> World.getWorld().getLoginServerConnector().connect(password, node));
-        } else {
-            this.session = cf.getSession();
-            logger.info("Connected.");
-            session.getFilterChain().addFirst("protocolCodecFilter", new ProtocolCodecFilter(new LoginCodecFactory()));
-            // create and send auth packet
-            final IoBuffer buf = IoBuffer.allocate(16);
-            buf.setAutoExpand(true);
-            buf.putShort((short) node);
-            IoBufferUtils.putRS2String(buf, password);
-            buf.flip();
-            this.session.write(new LoginPacket(LoginPacket.AUTH, buf));
-        }
+        cf.addListener(future -> {
+            if (cf.isConnected()) {
+                connected(cf.getSession());
+            } else {
+                logger.severe("Connection to login server failed. Retrying...");
+                reconnect();
+            }
+        });
+    }
+
+    /**
+     * Schedules another connection attempt.
+     */
+    private void reconnect() {
+        World.getWorld().getEngine().scheduleLogic(() -> connect(password, node), RECONNECT_DELAY, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Called when the connection is made, and sends the authentication
+     * packet.
+     *
+     * @param session The session.
+     */
+    private void connected(final IoSession session) {
+        logger.info("Connected.");
+        session.getFilterChain().addFirst("protocolCodecFilter", new ProtocolCodecFilter(new LoginCodecFactory()));
+        this.session = session;
+        // create and send auth packet
+        final IoBuffer buf = IoBuffer.allocate(16);
+        buf.setAutoExpand(true);
+        buf.putShort((short) node);
+        IoBufferUtils.putRS2String(buf, password);
+        buf.flip();
+        session.write(new LoginPacket(LoginPacket.AUTH, buf));
     }
 
     /**
@@ -137,7 +206,8 @@ public class LoginServerConnector extends IoHandlerAdapter {
      * @param packet The packet to write.
      */
     public void write(final LoginPacket packet) {
-        if (this.isConnected()) {
+        final IoSession session = this.session;
+        if (session == null || !session.isConnected()) {
             throw new IllegalStateException("Not connected.");
         } else {
             session.write(packet);
@@ -147,9 +217,12 @@ public class LoginServerConnector extends IoHandlerAdapter {
     @Override
     public void sessionClosed(final IoSession session) throws Exception {
         if (this.session == session) {
+            synchronized (this) {
+                this.session = null;
+                authenticated = false;
+            }
             logger.info("Disconnected. Retrying...");
-            connect(password, node);
-            this.session = null;
+            reconnect();
         }
     }
 
@@ -175,108 +248,166 @@ public class LoginServerConnector extends IoHandlerAdapter {
             case LoginPacket.AUTH_RESPONSE -> {
                 final int code = payload.getUnsigned();
                 if (code == 0) {
-                    authenticated = true;
                     logger.info("Authenticated as node : World-" + node + ".");
+                    resendPendingRequests();
                 } else {
                     session.close(false);
                     logger.severe("Login server authentication error : " + code + ". Check your password and node id.");
                 }
             }
-            case LoginPacket.CHECK_LOGIN_RESPONSE -> {
-                final String name = IoBufferUtils.getRS2String(payload);
-                final int returnCode = payload.getUnsigned();
-                synchronized (checkLoginResults) {
-                    checkLoginResults.put(name, returnCode);
-                    checkLoginResults.notifyAll();
-                }
-            }
-            case LoginPacket.LOAD_RESPONSE -> {
-                final String name = IoBufferUtils.getRS2String(payload);
-                final int returnCode = payload.getUnsigned();
-                if (returnCode == 1) {
-                    final int dataLength = payload.getUnsignedShort();
-                    final byte[] data = new byte[dataLength];
-                    payload.get(data);
-                    final IoBuffer dataBuffer = IoBuffer.allocate(dataLength);
-                    dataBuffer.put(data);
-                    dataBuffer.flip();
-                    synchronized (playerLoadResults) {
-                        playerLoadResults.put(name, dataBuffer);
-                        playerLoadResults.notifyAll();
-                    }
+            case LoginPacket.CHECK_LOGIN_RESPONSE, LoginPacket.LOAD_RESPONSE, LoginPacket.SAVE_RESPONSE, LoginPacket.SAVE_BATCH_RESPONSE -> {
+                final Request request = pendingRequests.remove(packet.getRequestId());
+                if (request == null) {
+                    logger.fine("Response to unknown or timed out request : " + packet.getRequestId());
                 } else {
-                    synchronized (playerLoadResults) {
-                        playerLoadResults.put(name, null);
-                        playerLoadResults.notifyAll();
-                    }
+                    request.future.complete(payload);
                 }
             }
-            case LoginPacket.SAVE_RESPONSE -> {
-                final String name = IoBufferUtils.getRS2String(payload);
-                final int success = payload.getUnsigned();
-                synchronized (playerSaveResults) {
-                    playerSaveResults.put(name, success == 1 ? Boolean.TRUE : Boolean.FALSE);
-                    playerSaveResults.notifyAll();
-                }
+        }
+    }
+
+    /**
+     * Marks the connector as authenticated and sends the requests which have
+     * not been sent on the current session, in the order they were made.
+     */
+    private synchronized void resendPendingRequests() {
+        authenticated = true;
+        int count = 0;
+        for (final Request request : pendingRequests.values().stream().sorted(Comparator.comparingInt(r -> r.id)).toList()) {
+            if (request.session != session) {
+                send(request);
+                count++;
+            }
+        }
+        if (count > 0) {
+            logger.info("Resent " + count + " pending requests.");
+        }
+    }
+
+    /**
+     * Sends a request to the login server. If the connector is not
+     * authenticated, the request is sent once it is.
+     *
+     * @param opcode  The opcode.
+     * @param payload The payload, which is kept so the request can be sent
+     *                again.
+     * @return A future which is completed with the payload of the response.
+     */
+    private CompletableFuture<IoBuffer> request(final int opcode, final IoBuffer payload) {
+        final Request request = new Request(opcode, nextRequestId.getAndIncrement(), payload);
+        pendingRequests.put(request.id, request);
+        request.future.orTimeout(timeout, TimeUnit.MILLISECONDS).whenComplete((response, t) -> pendingRequests.remove(request.id));
+        synchronized (this) {
+            if (isAuthenticated()) {
+                send(request);
             }
         }
+        return request.future;
+    }
+
+    /**
+     * Writes a request to the current session. This must only be called
+     * while holding the lock on this connector.
+     *
+     * @param request The request.
+     */
+    private void send(final Request request) {
+        request.session = session;
+        session.write(new LoginPacket(request.opcode, request.id, request.payload.duplicate()));
+    }
+
+    /**
+     * Waits for the result of a request.
+     *
+     * @param future   The future.
+     * @param fallback The result if the request failed.
+     * @param name     The name of the player the request is for.
+     * @param <T>      The type of the result.
+     * @return The result.
+     */
+    private static <T> T await(final CompletableFuture<T> future, final T fallback, final String name) {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallback;
+        } catch (final ExecutionException e) {
+            logger.log(Level.WARNING, "Login server request for " + name + " failed.", e.getCause());
+            return fallback;
+        }
     }
 
     /**
      * Checks the login of a player.
      *
      * @param pd The player details.
-     * @return The login result.
+     * @return A future which is completed with the login result.
      */
-    public LoginResult checkLogin(final PlayerDetails pd) {
+    public CompletableFuture<LoginResult> checkLoginAsync(final PlayerDetails pd) {
         final IoBuffer buf = IoBuffer.allocate(16);
         buf.setAutoExpand(true);
         IoBufferUtils.putRS2String(buf, pd.getName());
         IoBufferUtils.putRS2String(buf, pd.getPassword());
         buf.flip();
-        session.write(new LoginPacket(LoginPacket.CHECK_LOGIN, buf));
-        synchronized (checkLoginResults) {
-            while (!checkLoginResults.containsKey(NameUtils.formatNameForProtocol(pd.getName()))) {
-                try {
-                    checkLoginResults.wait();
-                } catch (final InterruptedException ignored) {
-                }
-            }
-            final int code = checkLoginResults.remove(NameUtils.formatNameForProtocol(pd.getName()));
+        return request(LoginPacket.CHECK_LOGIN, buf).thenApply(response -> {
+            IoBufferUtils.getRS2String(response);
+            final int code = response.getUnsigned();
             if (code == 2) {
                 return new LoginResult(code, new Player(pd));
             } else {
                 return new LoginResult(code);
             }
-        }
+        });
     }
 
     /**
-     * Loads a player.
+     * Checks the login of a player, and waits for the result.
      *
-     * @param player The player.
-     * @return <code>true</code> on success, <code>false</code> on error.
+     * @param pd The player details.
+     * @return The login result.
      */
-    public boolean loadPlayer(final Player player) {
+    public LoginResult checkLogin(final PlayerDetails pd) {
+        return await(checkLoginAsync(pd), new LoginResult(8), pd.getName());
+    }
+
+    /**
+     * Loads a player's saved data. The data is not deserialized here, as the
+     * future is completed on the connector's I/O thread.
+     *
+     * @param name The player's name.
+     * @return A future which is completed with the saved data, or
+     * <code>null</code> on error.
+     */
+    public CompletableFuture<byte[]> loadPlayerAsync(final String name) {
         final IoBuffer buf = IoBuffer.allocate(16);
         buf.setAutoExpand(true);
-        IoBufferUtils.putRS2String(buf, NameUtils.formatNameForProtocol(player.getName()));
+        IoBufferUtils.putRS2String(buf, NameUtils.formatNameForProtocol(name));
         buf.flip();
-        session.write(new LoginPacket(LoginPacket.LOAD, buf));
-        synchronized (playerLoadResults) {
-            while (!playerLoadResults.containsKey(NameUtils.formatNameForProtocol(player.getName()))) {
-                try {
-                    playerLoadResults.wait();
-                } catch (final InterruptedException ignored) {
-                }
-            }
-            final IoBuffer playerData = playerLoadResults.remove(NameUtils.formatNameForProtocol(player.getName()));
-            if (playerData == null) {
-                return false;
-            } else {
-                player.deserialize(playerData);
+        return request(LoginPacket.LOAD, buf).thenApply(response -> {
+            IoBufferUtils.getRS2String(response);
+            final int returnCode = response.getUnsigned();
+            if (returnCode != 1) {
+                return null;
             }
+            final byte[] data = new byte[response.getUnsignedShort()];
+            response.get(data);
+            return data;
+        });
+    }
+
+    /**
+     * Loads a player, and waits for the result. The player is deserialized
+     * on the calling thread.
+     *
+     * @param player The player.
+     * @return <code>true</code> on success, <code>false</code> on error.
+     */
+    public boolean loadPlayer(final Player player) {
+        final byte[] data = await(loadPlayerAsync(player.getName()), null, player.getName());
+        if (data == null) {
+            return false;
         }
+        player.deserialize(IoBuffer.wrap(data));
         return true;
     }
 
@@ -284,29 +415,127 @@ public class LoginServerConnector extends IoHandlerAdapter {
      * Saves a player.
      *
      * @param player The player.
-     * @return <code>true</code> on success, <code>false</code> on error.
+     * @return A future which is completed with <code>true</code> on success,
+     * <code>false</code> on error.
      */
-    public boolean savePlayer(final Player player) {
+    public CompletableFuture<Boolean> savePlayerAsync(final Player player) {
         final IoBuffer buf = IoBuffer.allocate(16);
         buf.setAutoExpand(true);
-        IoBufferUtils.putRS2String(buf, NameUtils.formatNameForProtocol(player.getName()));
-        final IoBuffer data = IoBuffer.allocate(1024);
-        data.setAutoExpand(true);
-        player.serialize(data);
-        data.flip();
-        buf.putShort((short) data.remaining());
-        buf.put(data);
+        putSavedGame(buf, SavedGame.of(player));
         buf.flip();
-        session.write(new LoginPacket(LoginPacket.SAVE, buf));
-        synchronized (playerSaveResults) {
-            while (!playerSaveResults.containsKey(NameUtils.formatNameForProtocol(player.getName()))) {
-                try {
-                    playerSaveResults.wait();
-                } catch (final InterruptedException ignored) {
+        return request(LoginPacket.SAVE, buf).thenApply(response -> {
+            IoBufferUtils.getRS2String(response);
+            return response.getUnsigned() == 1;
+        });
+    }
+
+    /**
+     * Saves a player, and waits for the result.
+     *
+     * @param player The player.
+     * @return <code>true</code> on success, <code>false</code> on error.
+     */
+    public boolean savePlayer(final Player player) {
+        return await(savePlayerAsync(player), false, player.getName());
+    }
+
+    /**
+     * Saves several players, in as few batched requests as fit in the
+     * maximum payload length. Each batch is answered with one response.
+     *
+     * @param games The saved games.
+     * @return A future which is completed with the result of each save, in
+     * the order of the saved games. Saves in a batch which failed, and games
+     * too large for a single request, are <code>false</code>.
+     */
+    public CompletableFuture<boolean[]> savePlayersAsync(final List<SavedGame> games) {
+        final boolean[] results = new boolean[games.size()];
+        final List<CompletableFuture<Void>> batches = new ArrayList<>();
+        final IoBuffer entry = IoBuffer.allocate(1024);
+        entry.setAutoExpand(true);
+        IoBuffer batch = null;
+        int first = 0;
+        for (int i = 0; i < results.length; i++) {
+            entry.clear();
+            putSavedGame(entry, games.get(i));
+            entry.flip();
+            if (2 + entry.remaining() > LoginPacket.MAX_PAYLOAD) {
+                /*
+                 * A game which does not fit in a request on its own is
+                 * refused. The batch so far is sent first, as a batch only
+                 * covers consecutive games.
+                 */
+                logger.warning("Saved game of " + games.get(i).getName() + " is too large to send : " + entry.remaining() + " bytes.");
+                if (batch != null) {
+                    batches.add(saveBatch(batch, first, i - first, results));
+                    batch = null;
                 }
+                results[i] = false;
+                continue;
+            }
+            if (batch != null && batch.position() + entry.remaining() > LoginPacket.MAX_PAYLOAD) {
+                batches.add(saveBatch(batch, first, i - first, results));
+                batch = null;
             }
-            return playerSaveResults.remove(NameUtils.formatNameForProtocol(player.getName()));
+            if (batch == null) {
+                batch = IoBuffer.allocate(Math.min(LoginPacket.MAX_PAYLOAD, 2 + entry.remaining() * (results.length - i)));
+                batch.setAutoExpand(true);
+                batch.putShort((short) 0);
+                first = i;
+            }
+            batch.put(entry);
+        }
+        if (batch != null) {
+            batches.add(saveBatch(batch, first, results.length - first, results));
         }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).thenApply(v -> results);
+    }
+
+    /**
+     * Sends a batched save request.
+     *
+     * @param batch   The batch, after the placeholder for the count.
+     * @param first   The index of the first player in the batch.
+     * @param count   The number of players in the batch.
+     * @param results The results of all saves, which are filled in when the
+     *                response arrives.
+     * @return A future which is completed when the response arrives, or the
+     * request fails.
+     */
+    private CompletableFuture<Void> saveBatch(final IoBuffer batch, final int first, final int count, final boolean[] results) {
+        batch.putShort(0, (short) count);
+        batch.flip();
+        return request(LoginPacket.SAVE_BATCH, batch).thenAccept(response -> {
+            final int saved = response.getUnsignedShort();
+            for (int i = 0; i < saved; i++) {
+                results[first + i] = response.getUnsigned() == 1;
+            }
+        }).exceptionally(t -> {
+            logger.log(Level.WARNING, "Batched save of " + count + " players failed.", t);
+            return null;
+        });
+    }
+
+    /**
+     * Saves several players, and waits for the results.
+     *
+     * @param games The saved games.
+     * @return The result of each save, in the order of the saved games.
+     */
+    public boolean[] savePlayers(final List<SavedGame> games) {
+        return await(savePlayersAsync(games), new boolean[games.size()], games.size() + " players");
+    }
+
+    /**
+     * Writes a player's name and saved data, prefixed by its length.
+     *
+     * @param buf  The buffer.
+     * @param game The saved game.
+     */
+    private static void putSavedGame(final IoBuffer buf, final SavedGame game) {
+        IoBufferUtils.putRS2String(buf, game.getName());
+        buf.putShort((short) game.getData().length);
+        buf.put(game.getData());
     }
 
     /**
@@ -319,7 +548,55 @@ public class LoginServerConnector extends IoHandlerAdapter {
         buf.setAutoExpand(true);
         IoBufferUtils.putRS2String(buf, NameUtils.formatNameForProtocol(name));
         buf.flip();
-        session.write(new LoginPacket(LoginPacket.DISCONNECT, buf));
+        if (isAuthenticated()) {
+            write(new LoginPacket(LoginPacket.DISCONNECT, buf));
+        }
+    }
+
+    /**
+     * A request which has not been answered.
+     */
+    private static final class Request {
+
+        /**
+         * The opcode.
+         */
+        private final int opcode;
+
+        /**
+         * The id.
+         */
+        private final int id;
+
+        /**
+         * The payload, which is duplicated each time the request is sent.
+         */
+        private final IoBuffer payload;
+
+        /**
+         * The future which is completed with the payload of the response.
+         */
+        private final CompletableFuture<IoBuffer> future = new CompletableFuture<>();
+
+        /**
+         * The session the request was last sent on, or <code>null</code> if
+         * it has not been sent.
+         */
+        private IoSession session;
+
+        /**
+         * Creates the request.
+         *
+         * @param opcode  The opcode.
+         * @param id      The id.
+         * @param payload The payload.
+         */
+        private Request(final int opcode, final int id, final IoBuffer payload) {
+            this.opcode = opcode;
+            this.id = id;
+            this.payload = payload;
+        }
+
     }
 
 }
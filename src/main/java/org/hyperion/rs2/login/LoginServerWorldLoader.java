@@ -5,6 +5,8 @@ import org.hyperion.rs2.model.Player;
 import org.hyperion.rs2.model.PlayerDetails;
 import org.hyperion.rs2.model.World;
 
+import java.util.List;
+
 /**
  * A <code>WorldLoader</code> which loads from the login server.
  *
@@ -31,4 +33,9 @@ public class LoginServerWorldLoader implements WorldLoader {
         return World.getWorld().getLoginServerConnector().savePlayer(player);
     }
 
+    @Override
+    public boolean[] savePlayers(final List<SavedGame> games) {
+        return World.getWorld().getLoginServerConnector().savePlayers(games);
+    }
+
 }
@@ -72,6 +72,11 @@ public class Appearance {
      */
     private int skinColour;
 
+    /**
+     * The version of this appearance, which changes whenever the look does.
+     */
+    private int version = 0;
+
     /**
      * Creates the default player appearance.
      */
@@ -138,6 +143,17 @@ public class Appearance {
         legColour = look[3];
         feetColour = look[4];
         skinColour = look[5];
+        version++;
+    }
+
+    /**
+     * Gets the version of this appearance. The version changes whenever the
+     * look is set.
+     *
+     * @return The version.
+     */
+    public int getVersion() {
+        return version;
     }
 
     /**
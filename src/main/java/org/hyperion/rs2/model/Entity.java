@@ -2,6 +2,7 @@ package org.hyperion.rs2.model;
 
 import org.hyperion.rs2.model.UpdateFlags.UpdateFlag;
 import org.hyperion.rs2.model.region.Region;
+import org.hyperion.rs2.model.region.RegionManager;
 
 import java.util.LinkedList;
 import java.util.List;
@@ -99,6 +100,23 @@ public abstract class Entity {
      */
     private Region currentRegion;
 
+    /**
+     * A flag indicating a move between regions has been deferred.
+     */
+    private boolean regionChangeDeferred = false;
+
+    /**
+     * The index of the cell this entity occupies within its region, or
+     * <code>-1</code> if it is not in a cell.
+     */
+    private int cellIndex = -1;
+
+    /**
+     * The slot this entity occupies within its cell, or <code>-1</code> if
+     * it is not in a cell.
+     */
+    private int cellSlot = -1;
+
     /**
      * The interacting entity.
      */
@@ -136,6 +154,50 @@ public abstract class Entity {
      */
     public abstract void addToRegion(Region region);
 
+    /**
+     * Moves this entity within the specified region after its location has
+     * changed.
+     *
+     * @param region The region.
+     */
+    public abstract void moveWithinRegion(Region region);
+
+    /**
+     * Gets the index of the cell this entity occupies within its region.
+     *
+     * @return The cell index, or <code>-1</code> if it is not in a cell.
+     */
+    public int getCellIndex() {
+        return cellIndex;
+    }
+
+    /**
+     * Sets the index of the cell this entity occupies within its region.
+     *
+     * @param cellIndex The cell index.
+     */
+    public void setCellIndex(final int cellIndex) {
+        this.cellIndex = cellIndex;
+    }
+
+    /**
+     * Gets the slot this entity occupies within its cell.
+     *
+     * @return The cell slot, or <code>-1</code> if it is not in a cell.
+     */
+    public int getCellSlot() {
+        return cellSlot;
+    }
+
+    /**
+     * Sets the slot this entity occupies within its cell.
+     *
+     * @param cellSlot The cell slot.
+     */
+    public void setCellSlot(final int cellSlot) {
+        this.cellSlot = cellSlot;
+    }
+
     /**
      * Returns the combat state of this entity.
      *
@@ -510,20 +572,63 @@ public abstract class Entity {
     }
 
     /**
-     * Sets the current location.
+     * Sets the current location. If region changes are being deferred by the
+     * <code>RegionManager</code>, a move into another region is queued and
+     * this entity's region is updated when the deferred changes are merged.
      *
      * @param location The current location.
      */
     public void setLocation(final Location location) {
         this.location = location;
 
+        final RegionManager regionManager = World.getWorld().getRegionManager();
+        if (regionManager.isDeferringRegionChanges()) {
+            if (regionChangeDeferred) {
+                return;
+            }
+            if (currentRegion == null || !currentRegion.contains(location)) {
+                regionChangeDeferred = true;
+                regionManager.deferRegionChange(this);
+            } else {
+                /*
+                 * Moves within a region only touch that region, which no
+                 * other thread is ticking.
+                 */
+                moveWithinRegion(currentRegion);
+            }
+        } else {
+            updateRegion();
+        }
+    }
+
+    /**
+     * Checks if a move between regions has been deferred.
+     *
+     * @return <code>true</code> if so, <code>false</code> if not.
+     */
+    public boolean isRegionChangeDeferred() {
+        return regionChangeDeferred;
+    }
+
+    /**
+     * Moves this entity into the region, and the cell within it, containing
+     * its current location. If a region change was deferred the entity is
+     * always removed and re-added, as it would have been had the change not
+     * been deferred.
+     */
+    public void updateRegion() {
+        final boolean deferred = regionChangeDeferred;
+        regionChangeDeferred = false;
+
         final Region newRegion = World.getWorld().getRegionManager().getRegionByLocation(location);
-        if (newRegion != currentRegion) {
+        if (newRegion != currentRegion || deferred) {
             if (currentRegion != null) {
                 removeFromRegion(currentRegion);
             }
             currentRegion = newRegion;
             addToRegion(currentRegion);
+        } else {
+            moveWithinRegion(currentRegion);
         }
     }
 
@@ -44,6 +44,11 @@ public class NPC extends Entity {
         region.addNpc(this);
     }
 
+    @Override
+    public void moveWithinRegion(final Region region) {
+        region.moveNpc(this);
+    }
+
     @Override
     public void inflictDamage(final int damage, final HitType type) {
         // TODO Auto-generated method stub
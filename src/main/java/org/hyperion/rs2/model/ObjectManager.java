@@ -1,6 +1,7 @@
 package org.hyperion.rs2.model;
 
 import org.hyperion.cache.Cache;
+import org.hyperion.cache.CacheManager;
 import org.hyperion.cache.InvalidCacheException;
 import org.hyperion.cache.index.impl.MapIndex;
 import org.hyperion.cache.index.impl.StandardIndex;
@@ -9,7 +10,6 @@ import org.hyperion.cache.map.LandscapeParser;
 import org.hyperion.cache.obj.ObjectDefinitionListener;
 import org.hyperion.cache.obj.ObjectDefinitionParser;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.logging.Logger;
 
@@ -42,18 +42,17 @@ public class ObjectManager implements LandscapeListener, ObjectDefinitionListene
      * @throws InvalidCacheException if the cache is invalid.
      */
     public void load() throws IOException, InvalidCacheException {
-        try (final Cache cache = new Cache(new File("./data/cache/"))) {
-            logger.info("Loading definitions...");
-            final StandardIndex[] defIndices = cache.getIndexTable().getObjectDefinitionIndices();
-            new ObjectDefinitionParser(cache, defIndices, this).parse();
-            logger.info("Loaded " + definitionCount + " object definitions.");
-            logger.info("Loading map...");
-            final MapIndex[] mapIndices = cache.getIndexTable().getMapIndices();
-            for (final MapIndex index : mapIndices) {
-                new LandscapeParser(cache, index.getIdentifier(), this).parse();
-            }
-            logger.info("Loaded " + objectCount + " objects.");
+        final Cache cache = CacheManager.getCache();
+        logger.info("Loading definitions...");
+        final StandardIndex[] defIndices = cache.getIndexTable().getObjectDefinitionIndices();
+        new ObjectDefinitionParser(cache, defIndices, this).parse();
+        logger.info("Loaded " + definitionCount + " object definitions.");
+        logger.info("Loading map...");
+        final MapIndex[] mapIndices = cache.getIndexTable().getMapIndices();
+        for (final MapIndex index : mapIndices) {
+            new LandscapeParser(cache, index.getIdentifier(), this).parse();
         }
+        logger.info("Loaded " + objectCount + " objects.");
     }
 
     @Override
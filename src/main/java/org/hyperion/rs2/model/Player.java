@@ -15,13 +15,19 @@ import org.hyperion.rs2.model.container.Equipment;
 import org.hyperion.rs2.model.container.Inventory;
 import org.hyperion.rs2.model.region.Region;
 import org.hyperion.rs2.net.ActionSender;
+import org.hyperion.rs2.net.BufferPool;
 import org.hyperion.rs2.net.ISAACCipher;
 import org.hyperion.rs2.net.Packet;
+import org.hyperion.rs2.net.PacketManager;
+import org.hyperion.rs2.net.RS2Encoder;
 import org.hyperion.rs2.util.IoBufferUtils;
 import org.hyperion.rs2.util.NameUtils;
 
+import java.util.ArrayDeque;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Represents a player-controller character.
@@ -63,9 +69,14 @@ public class Player extends Entity implements Persistable {
      */
     private final InterfaceState interfaceState = new InterfaceState(this);
     /**
-     * A queue of packets that are pending.
+     * A queue of packets that are waiting to be flushed.
      */
-    private final Queue<Packet> pendingPackets = new LinkedList<>();
+    private final Queue<Packet> pendingPackets = new ArrayDeque<>();
+    /**
+     * A bounded queue of incoming packets waiting to be handled at the start
+     * of the next tick.
+     */
+    private final Queue<Packet> queuedPackets = new ArrayBlockingQueue<>(PacketManager.getPacketManager().getQueueCapacity());
     /**
      * The request manager which manages trading and duelling requests.
      */
@@ -136,9 +147,27 @@ public class Player extends Entity implements Persistable {
      */
     private boolean members = true;
     /**
-     * The cached update block.
+     * The cached update blocks for this cycle, indexed by type.
+     */
+    private final AtomicReferenceArray<byte[]> cachedUpdateBlocks = new AtomicReferenceArray<>(UpdateBlockType.values().length);
+    /**
+     * The cached appearance block, which is kept until the appearance,
+     * equipment or combat level changes.
+     */
+    private volatile CachedAppearanceBlock cachedAppearanceBlock;
+    /**
+     * The version of the state when the player was last saved, or
+     * <code>-1</code> if the player has not been saved.
+     */
+    private long savedVersion = -1;
+    /**
+     * The location when the player was last saved.
      */
-    private Packet cachedUpdateBlock;
+    private Location savedLocation;
+    /**
+     * The time the player was last saved, or created, in nanoseconds.
+     */
+    private long savedTime = System.nanoTime();
 
     /*
      * Cached details.
@@ -190,25 +219,93 @@ public class Player extends Entity implements Persistable {
     }
 
     /**
-     * Writes a packet to the <code>IoSession</code>. If the player is not
-     * yet active, the packets are queued.
+     * Queues a packet to be written to the <code>IoSession</code>. Queued
+     * packets are written when the player is flushed, which happens once per
+     * cycle after the update, so the packets written during a cycle are
+     * sent together.
      *
      * @param packet The packet.
      */
     public void write(final Packet packet) {
         synchronized (this) {
-            if (active) {
-                for (final Packet pendingPacket : pendingPackets) {
-                    session.write(pendingPacket);
-                }
-                pendingPackets.clear();
-                session.write(packet);
-            } else {
-                pendingPackets.add(packet);
+            pendingPackets.add(packet);
+        }
+    }
+
+    /**
+     * Writes a packet to the <code>IoSession</code> straight away, along with
+     * any packets queued before it. This should only be used when the packet
+     * cannot wait until the end of the cycle.
+     *
+     * @param packet The packet.
+     */
+    public void writeNow(final Packet packet) {
+        synchronized (this) {
+            pendingPackets.add(packet);
+            flush();
+        }
+    }
+
+    /**
+     * Encodes every queued packet into a single buffer and writes it to the
+     * <code>IoSession</code>. If the player is not yet active, the packets
+     * stay queued.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (!active || pendingPackets.isEmpty()) {
+                return;
+            }
+            int length = 0;
+            for (final Packet packet : pendingPackets) {
+                length += RS2Encoder.getEncodedLength(packet);
             }
+
+            /*
+             * The opcodes are encrypted here rather than in the codec, in the
+             * order the packets were queued. The buffer is written as a raw
+             * packet which owns it, so it is returned to the pool once it has
+             * been sent.
+             */
+            final IoBuffer buffer = BufferPool.acquire(length);
+            Packet packet;
+            while ((packet = pendingPackets.poll()) != null) {
+                RS2Encoder.encode(packet, outCipher, buffer);
+                packet.release();
+            }
+            session.write(new Packet(-1, Packet.Type.FIXED, buffer.flip(), buffer));
         }
     }
 
+    /**
+     * Adds an incoming packet to the queue of packets waiting to be handled.
+     *
+     * @param packet The packet.
+     * @return <code>true</code> if the packet was queued, <code>false</code>
+     * if the queue is full.
+     */
+    public boolean queuePacket(final Packet packet) {
+        return queuedPackets.offer(packet);
+    }
+
+    /**
+     * Takes the next incoming packet waiting to be handled.
+     *
+     * @return The packet, or <code>null</code> if there are none.
+     */
+    public Packet pollQueuedPacket() {
+        return queuedPackets.poll();
+    }
+
+    /**
+     * Gets the number of incoming packets waiting to be handled.
+     *
+     * @return The number of packets.
+     */
+    public int getQueuedPacketCount() {
+        return queuedPackets.size();
+    }
+
     /**
      * Gets the player's bank.
      *
@@ -228,37 +325,120 @@ public class Player extends Entity implements Persistable {
     }
 
     /**
-     * Checks if there is a cached update block for this cycle.
+     * Gets a cached update block for this cycle.
      *
-     * @return <code>true</code> if so, <code>false</code> if not.
+     * @param type The type of update block.
+     * @return The cached update block, or <code>null</code> if there is none.
      */
-    public boolean hasCachedUpdateBlock() {
-        return cachedUpdateBlock != null;
+    public byte[] getCachedUpdateBlock(final UpdateBlockType type) {
+        return cachedUpdateBlocks.get(type.ordinal());
     }
 
     /**
-     * Gets the cached update block.
+     * Sets a cached update block for this cycle.
      *
-     * @return The cached update block.
+     * @param type              The type of update block.
+     * @param cachedUpdateBlock The cached update block.
      */
-    public Packet getCachedUpdateBlock() {
-        return cachedUpdateBlock;
+    public void setCachedUpdateBlock(final UpdateBlockType type, final byte[] cachedUpdateBlock) {
+        cachedUpdateBlocks.set(type.ordinal(), cachedUpdateBlock);
     }
 
     /**
-     * Sets the cached update block for this cycle.
+     * Sets a cached update block for this cycle, unless another thread has
+     * already set one.
      *
+     * @param type              The type of update block.
      * @param cachedUpdateBlock The cached update block.
+     * @return The cached update block, which is the one set by the other
+     * thread if there was one.
      */
-    public void setCachedUpdateBlock(final Packet cachedUpdateBlock) {
-        this.cachedUpdateBlock = cachedUpdateBlock;
+    public byte[] setCachedUpdateBlockIfAbsent(final UpdateBlockType type, final byte[] cachedUpdateBlock) {
+        if (cachedUpdateBlocks.compareAndSet(type.ordinal(), null, cachedUpdateBlock)) {
+            return cachedUpdateBlock;
+        }
+        return cachedUpdateBlocks.get(type.ordinal());
     }
 
     /**
-     * Resets the cached update block.
+     * Resets the cached update blocks.
      */
     public void resetCachedUpdateBlock() {
-        cachedUpdateBlock = null;
+        for (int i = 0; i < cachedUpdateBlocks.length(); i++) {
+            cachedUpdateBlocks.set(i, null);
+        }
+    }
+
+    /**
+     * Gets the cached appearance block, if it was built from the current
+     * appearance, equipment and combat level.
+     *
+     * @return The cached appearance block, or <code>null</code> if there is
+     * none or it is out of date.
+     */
+    public byte[] getCachedAppearanceBlock() {
+        final CachedAppearanceBlock cached = cachedAppearanceBlock;
+        if (cached == null
+            || cached.appearanceVersion != appearance.getVersion()
+            || cached.equipmentVersion != equipment.getVersion()
+            || cached.combatLevel != skills.getCombatLevel()) {
+            return null;
+        }
+        return cached.block;
+    }
+
+    /**
+     * Sets the cached appearance block, which was built from the current
+     * appearance, equipment and combat level. The block must not be modified
+     * afterwards.
+     *
+     * @param block The appearance block.
+     */
+    public void setCachedAppearanceBlock(final byte[] block) {
+        cachedAppearanceBlock = new CachedAppearanceBlock(appearance.getVersion(), equipment.getVersion(), skills.getCombatLevel(), block);
+    }
+
+    /**
+     * Gets the version of the saved state other than the location: the
+     * skills, appearance, equipment, inventory and bank. The version
+     * increases whenever any of them changes.
+     *
+     * @return The version.
+     */
+    public long getStateVersion() {
+        return (long) skills.getVersion() + appearance.getVersion() + equipment.getVersion() + inventory.getVersion() + bank.getVersion();
+    }
+
+    /**
+     * Checks if the player has changed since they were last saved.
+     *
+     * @return <code>true</code> if so, <code>false</code> if not.
+     */
+    public boolean isDirty() {
+        return getStateVersion() != savedVersion || !getLocation().equals(savedLocation);
+    }
+
+    /**
+     * Records that the player was saved.
+     *
+     * @param version  The state version which was saved.
+     * @param location The location which was saved.
+     * @param time     The time the player was saved, in nanoseconds.
+     */
+    public void setSaved(final long version, final Location location, final long time) {
+        this.savedVersion = version;
+        this.savedLocation = location;
+        this.savedTime = time;
+    }
+
+    /**
+     * Gets the time the player was last saved, or created if they have not
+     * been saved.
+     *
+     * @return The time, in nanoseconds.
+     */
+    public long getSavedTime() {
+        return savedTime;
     }
 
     /**
@@ -616,6 +796,11 @@ public class Player extends Entity implements Persistable {
         region.addPlayer(this);
     }
 
+    @Override
+    public void moveWithinRegion(final Region region) {
+        region.movePlayer(this);
+    }
+
     @Override
     public void inflictDamage(final int damage, final HitType type) {
         // TODO Auto-generated method stub
@@ -627,6 +812,72 @@ public class Player extends Entity implements Persistable {
         return this.getIndex() + 32768;
     }
 
+    /**
+     * The types of update block which are sent for a player.
+     */
+    public enum UpdateBlockType {
+
+        /**
+         * The block sent to other players who already have this player in
+         * their local list.
+         */
+        NORMAL,
+
+        /**
+         * The block sent to other players who are adding this player to their
+         * local list, which always includes the appearance.
+         */
+        FORCED_APPEARANCE,
+
+        /**
+         * The block sent to this player, which never includes its own chat.
+         */
+        NO_CHAT
+
+    }
+
+    /**
+     * An appearance block along with the versions it was built from.
+     */
+    private static final class CachedAppearanceBlock {
+
+        /**
+         * The version of the appearance.
+         */
+        private final int appearanceVersion;
+
+        /**
+         * The version of the equipment.
+         */
+        private final int equipmentVersion;
+
+        /**
+         * The combat level.
+         */
+        private final int combatLevel;
+
+        /**
+         * The appearance block.
+         */
+        private final byte[] block;
+
+        /**
+         * Creates the cached appearance block.
+         *
+         * @param appearanceVersion The version of the appearance.
+         * @param equipmentVersion  The version of the equipment.
+         * @param combatLevel       The combat level.
+         * @param block             The appearance block.
+         */
+        private CachedAppearanceBlock(final int appearanceVersion, final int equipmentVersion, final int combatLevel, final byte[] block) {
+            this.appearanceVersion = appearanceVersion;
+            this.equipmentVersion = equipmentVersion;
+            this.combatLevel = combatLevel;
+            this.block = block;
+        }
+
+    }
+
     /**
      * Represents the rights of a player.
      *
@@ -55,6 +55,12 @@ public class Skills {
      */
     private final double[] exps = new double[SKILL_COUNT];
 
+    /**
+     * The version of these skills, which changes whenever a level or
+     * experience does.
+     */
+    private int version = 0;
+
     /**
      * Creates a skills object.
      *
@@ -148,6 +154,7 @@ public class Skills {
     public void setSkill(final int skill, final int level, final double exp) {
         levels[skill] = level;
         exps[skill] = exp;
+        version++;
         player.getActionSender().sendSkill(skill);
     }
 
@@ -159,6 +166,7 @@ public class Skills {
      */
     public void setLevel(final int skill, final int level) {
         levels[skill] = level;
+        version++;
         player.getActionSender().sendSkill(skill);
     }
 
@@ -171,6 +179,7 @@ public class Skills {
     public void setExperience(final int skill, final double exp) {
         final int oldLvl = getLevelForExperience(skill);
         exps[skill] = exp;
+        version++;
         player.getActionSender().sendSkill(skill);
         final int newLvl = getLevelForExperience(skill);
         if (oldLvl != newLvl) {
@@ -185,6 +194,7 @@ public class Skills {
      */
     public void incrementLevel(final int skill) {
         levels[skill]++;
+        version++;
         player.getActionSender().sendSkill(skill);
     }
 
@@ -195,6 +205,7 @@ public class Skills {
      */
     public void decrementLevel(final int skill) {
         levels[skill]--;
+        version++;
         player.getActionSender().sendSkill(skill);
     }
 
@@ -212,6 +223,7 @@ public class Skills {
             amount = levels[skill];
         }
         levels[skill] = levels[skill] - amount;
+        version++;
         player.getActionSender().sendSkill(skill);
     }
 
@@ -224,13 +236,25 @@ public class Skills {
         final int norm = getLevelForExperience(skill);
         if (levels[skill] > norm) {
             levels[skill]--;
+            version++;
             player.getActionSender().sendSkill(skill);
         } else if (levels[skill] < norm) {
             levels[skill]++;
+            version++;
             player.getActionSender().sendSkill(skill);
         }
     }
 
+    /**
+     * Gets the version of these skills. The version changes whenever a level
+     * or experience is changed.
+     *
+     * @return The version.
+     */
+    public int getVersion() {
+        return version;
+    }
+
     /**
      * Gets a level.
      *
@@ -282,6 +306,7 @@ public class Skills {
         if (exps[skill] > MAXIMUM_EXP) {
             exps[skill] = MAXIMUM_EXP;
         }
+        version++;
         final int newLevel = getLevelForExperience(skill);
         final int levelDiff = newLevel - oldLevel;
         if (levelDiff > 0) {
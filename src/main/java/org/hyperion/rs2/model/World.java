@@ -1,8 +1,12 @@
 package org.hyperion.rs2.model;
 
+import org.hyperion.cache.CacheManager;
+import org.hyperion.rs2.CheckpointService;
 import org.hyperion.rs2.Constants;
 import org.hyperion.rs2.GameEngine;
 import org.hyperion.rs2.GenericWorldLoader;
+import org.hyperion.rs2.LoginStatistics;
+import org.hyperion.rs2.TickScheduler;
 import org.hyperion.rs2.WorldLoader;
 import org.hyperion.rs2.WorldLoader.LoginResult;
 import org.hyperion.rs2.event.Event;
@@ -14,6 +18,7 @@ import org.hyperion.rs2.login.LoginServerWorldLoader;
 import org.hyperion.rs2.model.region.RegionManager;
 import org.hyperion.rs2.net.PacketBuilder;
 import org.hyperion.rs2.net.PacketManager;
+import org.hyperion.rs2.net.ondemand.OnDemandPool;
 import org.hyperion.rs2.packet.PacketHandler;
 import org.hyperion.rs2.task.Task;
 import org.hyperion.rs2.task.impl.SessionLoginTask;
@@ -62,6 +67,18 @@ public class World {
      * The region manager.
      */
     private final RegionManager regionManager = new RegionManager();
+    /**
+     * The update event, which runs the world tick.
+     */
+    private final UpdateEvent updateEvent = new UpdateEvent();
+    /**
+     * The login statistics.
+     */
+    private final LoginStatistics loginStatistics = new LoginStatistics();
+    /**
+     * The checkpoint service, which periodically saves changed players.
+     */
+    private final CheckpointService checkpointService = new CheckpointService();
     /**
      * The game engine.
      */
@@ -143,7 +160,7 @@ public class World {
      * Registers global events such as updating.
      */
     private void registerGlobalEvents() {
-        submit(new UpdateEvent());
+        engine.getTickScheduler().start(updateEvent);
         submit(new CleanupEvent());
     }
 
@@ -168,6 +185,56 @@ public class World {
                 this.loader = new GenericWorldLoader();
                 logger.fine("WorldLoader set to default");
             }
+            if (mappings.containsKey("tickPolicy")) {
+                engine.getTickScheduler().setPolicy(TickScheduler.Policy.valueOf(mappings.get("tickPolicy").toUpperCase()));
+            }
+            if (mappings.containsKey("tickMaxCatchUp")) {
+                engine.getTickScheduler().setMaxCatchUpTicks(Integer.parseInt(mappings.get("tickMaxCatchUp")));
+            }
+            logger.fine("Tick policy set to : " + engine.getTickScheduler().getPolicy());
+            if (mappings.containsKey("tickMode")) {
+                updateEvent.setTickMode(UpdateEvent.TickMode.valueOf(mappings.get("tickMode").toUpperCase()));
+            }
+            logger.fine("Tick mode set to : " + updateEvent.getTickMode());
+            if (mappings.containsKey("taskExecutor")) {
+                engine.setTaskExecutor(GameEngine.TaskExecutor.valueOf(mappings.get("taskExecutor").toUpperCase()));
+            }
+            logger.fine("Task executor set to : " + engine.getTaskExecutor());
+            if (mappings.containsKey("workService")) {
+                final int threads = mappings.containsKey("workThreads") ? Integer.parseInt(mappings.get("workThreads")) : GameEngine.DEFAULT_WORK_THREADS;
+                engine.setWorkService(GameEngine.WorkService.valueOf(mappings.get("workService").toUpperCase()), threads);
+            }
+            logger.fine("Work service set to : " + engine.getWorkService());
+            if (mappings.containsKey("checkpointInterval")) {
+                checkpointService.setInterval(Integer.parseInt(mappings.get("checkpointInterval")));
+            }
+            if (mappings.containsKey("fileCacheSize")) {
+                CacheManager.setFileCacheCapacity(Long.parseLong(mappings.get("fileCacheSize")) * 1024 * 1024);
+            }
+            final OnDemandPool onDemandPool = OnDemandPool.getOnDemandPool();
+            if (mappings.containsKey("onDemandThreads")) {
+                onDemandPool.setPoolSize(Integer.parseInt(mappings.get("onDemandThreads")));
+            }
+            if (mappings.containsKey("onDemandSessionLimit")) {
+                onDemandPool.setSessionLimit(Integer.parseInt(mappings.get("onDemandSessionLimit")));
+            }
+            if (mappings.containsKey("onDemandWriteLimit")) {
+                onDemandPool.setWriteLimit(Long.parseLong(mappings.get("onDemandWriteLimit")));
+            }
+            final PacketManager packetManager = PacketManager.getPacketManager();
+            if (mappings.containsKey("packetDispatch")) {
+                packetManager.setDispatchMode(PacketManager.DispatchMode.valueOf(mappings.get("packetDispatch").toUpperCase()));
+            }
+            if (mappings.containsKey("packetQueueCapacity")) {
+                packetManager.setQueueCapacity(Integer.parseInt(mappings.get("packetQueueCapacity")));
+            }
+            if (mappings.containsKey("packetBudget")) {
+                packetManager.setPacketBudget(Integer.parseInt(mappings.get("packetBudget")));
+            }
+            if (mappings.containsKey("packetOverflow")) {
+                packetManager.setOverflowPolicy(PacketManager.OverflowPolicy.valueOf(mappings.get("packetOverflow").toUpperCase()));
+            }
+            logger.fine("Packet dispatch set to : " + packetManager.getDispatchMode());
             final Map<String, Map<String, String>> complexMappings = p.getComplexMappings();
             if (complexMappings.containsKey("packetHandlers")) {
                 final Map<Class<?>, Object> loadedHandlers = new HashMap<>();
@@ -186,6 +253,9 @@ public class World {
             }
             if (loader instanceof LoginServerWorldLoader) {
                 connector = new LoginServerConnector(mappings.get("loginServer"));
+                if (mappings.containsKey("loginServerTimeout")) {
+                    connector.setTimeout(Long.parseLong(mappings.get("loginServerTimeout")));
+                }
                 connector.connect(mappings.get("nodePassword"), Integer.parseInt(mappings.get("nodeId")));
             }
         }
@@ -227,6 +297,24 @@ public class World {
         return loader;
     }
 
+    /**
+     * Gets the checkpoint service.
+     *
+     * @return The checkpoint service.
+     */
+    public CheckpointService getCheckpointService() {
+        return checkpointService;
+    }
+
+    /**
+     * Gets the login statistics.
+     *
+     * @return The login statistics.
+     */
+    public LoginStatistics getLoginStatistics() {
+        return loginStatistics;
+    }
+
     /**
      * Gets the game engine.
      *
@@ -242,7 +330,8 @@ public class World {
      * @param pd The player's details.
      */
     public void load(final PlayerDetails pd) {
-        engine.submitWork(() -> {
+        final long loginStart = System.nanoTime();
+        engine.submitWork(NameUtils.formatNameForProtocol(pd.getName()), () -> {
             final LoginResult lr = loader.checkLogin(pd);
             int code = lr.getReturnCode();
             if (!NameUtils.isValidName(pd.getName())) {
@@ -250,8 +339,14 @@ public class World {
             }
             if (code == 2) {
                 lr.getPlayer().getSession().setAttribute("player", lr.getPlayer());
-                loader.loadPlayer(lr.getPlayer());
-                engine.pushTask(new SessionLoginTask(lr.getPlayer()));
+                if (loader.loadPlayer(lr.getPlayer())) {
+                    /*
+                     * The player is published to the logic thread by the
+                     * login task, so this is seen there.
+                     */
+                    lr.getPlayer().setSaved(lr.getPlayer().getStateVersion(), lr.getPlayer().getLocation(), System.nanoTime());
+                }
+                engine.pushTask(new SessionLoginTask(lr.getPlayer(), loginStart));
             } else {
                 final PacketBuilder bldr = new PacketBuilder();
                 bldr.put((byte) code);
@@ -355,7 +450,7 @@ public class World {
         player.getSession().close(false);
         players.remove(player);
         logger.info("Unregistered player : " + player + " [online=" + players.size() + "]");
-        engine.submitWork(() -> {
+        engine.submitWork(NameUtils.formatNameForProtocol(player.getName()), () -> {
             loader.savePlayer(player);
             if (World.getWorld().getLoginServerConnector() != null) {
                 World.getWorld().getLoginServerConnector().disconnected(player.getName());
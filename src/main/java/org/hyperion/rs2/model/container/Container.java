@@ -35,6 +35,10 @@ public class Container {
      * Firing events flag.
      */
     private boolean firingEvents = true;
+    /**
+     * The version of this container, which changes whenever an item does.
+     */
+    private int version = 0;
 
     /**
      * Creates the container with the specified capacity.
@@ -70,6 +74,16 @@ public class Container {
         }
     }
 
+    /**
+     * Gets the version of this container. The version changes whenever an
+     * item is changed, whether or not events are being fired.
+     *
+     * @return The version.
+     */
+    public int getVersion() {
+        return version;
+    }
+
     /**
      * Checks the firing events flag.
      *
@@ -130,6 +144,7 @@ public class Container {
     public void shift() {
         final Item[] old = items;
         items = new Item[capacity];
+        version++;
         int newIndex = 0;
         for (int i = 0; i < items.length; i++) {
             if (old[i] != null) {
@@ -231,6 +246,7 @@ public class Container {
      */
     public void clear() {
         items = new Item[items.length];
+        version++;
         if (firingEvents) {
             fireItemsChanged();
         }
@@ -350,6 +366,7 @@ public class Container {
      */
     public void set(final int index, final Item item) {
         items[index] = item;
+        version++;
         if (firingEvents) {
             fireItemChanged(index);
         }
@@ -457,6 +474,7 @@ public class Container {
         }
         // now fill in the target slot
         items[toSlot] = from;
+        version++;
         if (firingEvents) {
             fireItemsChanged();
         }
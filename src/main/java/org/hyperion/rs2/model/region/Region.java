@@ -1,41 +1,75 @@
 package org.hyperion.rs2.model.region;
 
+import org.hyperion.rs2.model.Entity;
 import org.hyperion.rs2.model.GameObject;
+import org.hyperion.rs2.model.Location;
 import org.hyperion.rs2.model.NPC;
 import org.hyperion.rs2.model.Player;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Represents a single region.
+ * <p>
+ * The players and NPCs in a region are held in the cells of the region.
+ * Changes are made while holding the region's lock, but reads use snapshots
+ * which are only rebuilt after a change, so the update phase can read a
+ * region from many threads without taking its lock.
  *
  * @author Graham Edgecombe
  */
 public class Region {
 
     /**
-     * The region coordinates.
+     * The size of a cell, which regions are divided into to find local
+     * entities quickly.
      */
-    private final RegionCoordinates coordinate;
+    public static final int CELL_SIZE = 8;
 
     /**
-     * A list of players in this region.
+     * The number of cells along each side of a region.
      */
-    private final List<Player> players = new LinkedList<>();
+    private static final int CELLS_PER_SIDE = RegionManager.REGION_SIZE / CELL_SIZE;
 
     /**
-     * A list of NPCs in this region.
+     * The region coordinates.
      */
-    private final List<NPC> npcs = new LinkedList<>();
+    private final RegionCoordinates coordinate;
 
     /**
      * A list of objects in this region.
      */
     private final List<GameObject> objects = new LinkedList<>();
 
+    /**
+     * The cells holding the players in this region, created when first used.
+     */
+    @SuppressWarnings("unchecked")
+    private final RegionCell<Player>[] playerCells = new RegionCell[CELLS_PER_SIDE * CELLS_PER_SIDE];
+
+    /**
+     * The cells holding the NPCs in this region, created when first used.
+     */
+    @SuppressWarnings("unchecked")
+    private final RegionCell<NPC>[] npcCells = new RegionCell[CELLS_PER_SIDE * CELLS_PER_SIDE];
+
+    /**
+     * A snapshot of the players in this region, or <code>null</code> if it
+     * must be rebuilt.
+     */
+    private volatile Collection<Player> playerSnapshot = Collections.emptyList();
+
+    /**
+     * A snapshot of the NPCs in this region, or <code>null</code> if it must
+     * be rebuilt.
+     */
+    private volatile Collection<NPC> npcSnapshot = Collections.emptyList();
+
     /**
      * Creates a region.
      *
@@ -55,25 +89,244 @@ public class Region {
     }
 
     /**
-     * Gets the list of players.
+     * Checks if a location lies within this region.
+     *
+     * @param location The location.
+     * @return <code>true</code> if so, <code>false</code> if not.
+     */
+    public boolean contains(final Location location) {
+        return location.getX() / RegionManager.REGION_SIZE == coordinate.getX() && location.getY() / RegionManager.REGION_SIZE == coordinate.getY();
+    }
+
+    /**
+     * Gets the index of the cell containing a location within this region.
+     *
+     * @param location The location.
+     * @return The cell index.
+     */
+    private static int getCellIndex(final Location location) {
+        final int x = location.getX() % RegionManager.REGION_SIZE / CELL_SIZE;
+        final int y = location.getY() % RegionManager.REGION_SIZE / CELL_SIZE;
+        return x + y * CELLS_PER_SIDE;
+    }
+
+    /**
+     * Adds an entity to the cell containing its location.
+     *
+     * @param cells  The cells.
+     * @param entity The entity.
+     * @param <E>    The type of entity.
+     */
+    private static <E extends Entity> void addToCell(final RegionCell<E>[] cells, final E entity) {
+        final int index = getCellIndex(entity.getLocation());
+        if (cells[index] == null) {
+            cells[index] = new RegionCell<>();
+        }
+        cells[index].add(entity);
+        entity.setCellIndex(index);
+    }
+
+    /**
+     * Removes an entity from the cell it was last added to, if that cell is
+     * in this region.
+     *
+     * @param cells  The cells.
+     * @param entity The entity.
+     * @param <E>    The type of entity.
+     */
+    private static <E extends Entity> void removeFromCell(final RegionCell<E>[] cells, final E entity) {
+        final int index = entity.getCellIndex();
+        if (index != -1 && cells[index] != null && cells[index].remove(entity)) {
+            entity.setCellIndex(-1);
+        }
+    }
+
+    /**
+     * Moves an entity into the cell containing its location, if it has left
+     * the cell it was last added to.
+     *
+     * @param cells  The cells.
+     * @param entity The entity.
+     * @param <E>    The type of entity.
+     */
+    private static <E extends Entity> void moveCell(final RegionCell<E>[] cells, final E entity) {
+        if (entity.getCellIndex() != getCellIndex(entity.getLocation())) {
+            removeFromCell(cells, entity);
+            addToCell(cells, entity);
+        }
+    }
+
+    /**
+     * Adds the entities in this region which are within distance of a
+     * location to a buffer, visiting only the cells which overlap the
+     * distance.
+     *
+     * @param cells    The cells.
+     * @param location The location.
+     * @param buffer   The buffer.
+     * @param count    The number of entities found so far.
+     * @param <E>      The type of entity.
+     * @return The number of entities found so far, including those in this
+     * region. This may exceed the length of the buffer.
+     */
+    private <E extends Entity> int collect(final RegionCell<E>[] cells, final Location location, final E[] buffer, int count) {
+        final int minX = location.getX() + RegionManager.LOCAL_MIN_OFFSET - coordinate.getX() * RegionManager.REGION_SIZE;
+        final int minY = location.getY() + RegionManager.LOCAL_MIN_OFFSET - coordinate.getY() * RegionManager.REGION_SIZE;
+        final int maxX = location.getX() + RegionManager.LOCAL_MAX_OFFSET - coordinate.getX() * RegionManager.REGION_SIZE;
+        final int maxY = location.getY() + RegionManager.LOCAL_MAX_OFFSET - coordinate.getY() * RegionManager.REGION_SIZE;
+        if (maxX < 0 || maxY < 0 || minX >= RegionManager.REGION_SIZE || minY >= RegionManager.REGION_SIZE) {
+            return count;
+        }
+        final int minCellX = Math.max(minX, 0) / CELL_SIZE;
+        final int minCellY = Math.max(minY, 0) / CELL_SIZE;
+        final int maxCellX = Math.min(maxX, RegionManager.REGION_SIZE - 1) / CELL_SIZE;
+        final int maxCellY = Math.min(maxY, RegionManager.REGION_SIZE - 1) / CELL_SIZE;
+        for (int y = minCellY; y <= maxCellY; y++) {
+            for (int x = minCellX; x <= maxCellX; x++) {
+                final RegionCell<E> cell = cells[x + y * CELLS_PER_SIDE];
+                if (cell != null) {
+                    count = cell.collect(this, location, buffer, count);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the players in this region which are within distance of a
+     * location to a buffer.
      *
-     * @return The list of players.
+     * @param location The location.
+     * @param buffer   The buffer.
+     * @param count    The number of players found so far.
+     * @return The number of players found so far, including those in this
+     * region. This may exceed the length of the buffer.
+     */
+    public int getLocalPlayers(final Location location, final Player[] buffer, final int count) {
+        return collect(playerCells, location, buffer, count);
+    }
+
+    /**
+     * Adds the NPCs in this region which are within distance of a location to
+     * a buffer.
+     *
+     * @param location The location.
+     * @param buffer   The buffer.
+     * @param count    The number of NPCs found so far.
+     * @return The number of NPCs found so far, including those in this
+     * region. This may exceed the length of the buffer.
+     */
+    public int getLocalNpcs(final Location location, final NPC[] buffer, final int count) {
+        return collect(npcCells, location, buffer, count);
+    }
+
+    /**
+     * Builds a snapshot of every entity in a set of cells. This must be
+     * called while holding this region's lock.
+     *
+     * @param cells The cells.
+     * @param <E>   The type of entity.
+     * @return The snapshot.
+     */
+    @SuppressWarnings("unchecked")
+    private <E extends Entity> Collection<E> buildSnapshot(final RegionCell<E>[] cells) {
+        int size = 0;
+        for (final RegionCell<E> cell : cells) {
+            if (cell != null) {
+                size += cell.size();
+            }
+        }
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        final Entity[] entities = new Entity[size];
+        int offset = 0;
+        for (final RegionCell<E> cell : cells) {
+            if (cell != null) {
+                final Entity[] snapshot = cell.snapshot(this);
+                System.arraycopy(snapshot, 0, entities, offset, snapshot.length);
+                offset += snapshot.length;
+            }
+        }
+        return Collections.unmodifiableList(Arrays.asList((E[]) entities));
+    }
+
+    /**
+     * Visits every entity in a set of cells.
+     *
+     * @param cells   The cells.
+     * @param visitor The visitor.
+     * @param <E>     The type of entity.
+     */
+    @SuppressWarnings("unchecked")
+    private <E extends Entity> void visit(final RegionCell<E>[] cells, final Consumer<? super E> visitor) {
+        for (final RegionCell<E> cell : cells) {
+            if (cell != null) {
+                for (final Entity entity : cell.snapshot(this)) {
+                    visitor.accept((E) entity);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits every player in this region. No objects are created unless the
+     * region has changed since it was last read.
+     *
+     * @param visitor The visitor.
+     */
+    public void forEachPlayer(final Consumer<? super Player> visitor) {
+        visit(playerCells, visitor);
+    }
+
+    /**
+     * Visits every NPC in this region. No objects are created unless the
+     * region has changed since it was last read.
+     *
+     * @param visitor The visitor.
+     */
+    public void forEachNpc(final Consumer<? super NPC> visitor) {
+        visit(npcCells, visitor);
+    }
+
+    /**
+     * Gets a snapshot of the players in this region. The snapshot is only
+     * rebuilt after the players in the region have changed.
+     *
+     * @return The players.
      */
     public Collection<Player> getPlayers() {
-        synchronized (this) {
-            return Collections.unmodifiableCollection(new LinkedList<>(players));
+        Collection<Player> players = playerSnapshot;
+        if (players == null) {
+            synchronized (this) {
+                players = playerSnapshot;
+                if (players == null) {
+                    players = buildSnapshot(playerCells);
+                    playerSnapshot = players;
+                }
+            }
         }
+        return players;
     }
 
     /**
-     * Gets the list of NPCs.
+     * Gets a snapshot of the NPCs in this region. The snapshot is only rebuilt
+     * after the NPCs in the region have changed.
      *
-     * @return The list of NPCs.
+     * @return The NPCs.
      */
     public Collection<NPC> getNpcs() {
-        synchronized (this) {
-            return Collections.unmodifiableCollection(new LinkedList<>(npcs));
+        Collection<NPC> npcs = npcSnapshot;
+        if (npcs == null) {
+            synchronized (this) {
+                npcs = npcSnapshot;
+                if (npcs == null) {
+                    npcs = buildSnapshot(npcCells);
+                    npcSnapshot = npcs;
+                }
+            }
         }
+        return npcs;
     }
 
     /**
@@ -92,7 +345,8 @@ public class Region {
      */
     public void addPlayer(final Player player) {
         synchronized (this) {
-            players.add(player);
+            addToCell(playerCells, player);
+            playerSnapshot = null;
         }
     }
 
@@ -103,7 +357,19 @@ public class Region {
      */
     public void removePlayer(final Player player) {
         synchronized (this) {
-            players.remove(player);
+            removeFromCell(playerCells, player);
+            playerSnapshot = null;
+        }
+    }
+
+    /**
+     * Moves a player within this region after its location has changed.
+     *
+     * @param player The player which moved.
+     */
+    public void movePlayer(final Player player) {
+        synchronized (this) {
+            moveCell(playerCells, player);
         }
     }
 
@@ -114,7 +380,8 @@ public class Region {
      */
     public void addNpc(final NPC npc) {
         synchronized (this) {
-            npcs.add(npc);
+            addToCell(npcCells, npc);
+            npcSnapshot = null;
         }
     }
 
@@ -125,7 +392,19 @@ public class Region {
      */
     public void removeNpc(final NPC npc) {
         synchronized (this) {
-            npcs.remove(npc);
+            removeFromCell(npcCells, npc);
+            npcSnapshot = null;
+        }
+    }
+
+    /**
+     * Moves an NPC within this region after its location has changed.
+     *
+     * @param npc The NPC which moved.
+     */
+    public void moveNpc(final NPC npc) {
+        synchronized (this) {
+            moveCell(npcCells, npc);
         }
     }
 
@@ -0,0 +1,139 @@
+package org.hyperion.rs2.model.region;
+
+import org.hyperion.rs2.model.Entity;
+import org.hyperion.rs2.model.Location;
+
+import java.util.Arrays;
+
+/**
+ * A square cell within a region, holding the entities of a single type which
+ * are currently standing in it.
+ * <p>
+ * Entities are kept in an array, and each entity records its slot in that
+ * array so it can be removed in constant time. Changes must be made while
+ * holding the lock of the region the cell belongs to.
+ * <p>
+ * Readers use a snapshot of the array instead, which is rebuilt the first
+ * time it is requested after a change. While the cell does not change, as in
+ * the update phase, reading it takes no lock and allocates nothing.
+ *
+ * @param <E> The type of entity.
+ */
+final class RegionCell<E extends Entity> {
+
+    /**
+     * An empty snapshot.
+     */
+    private static final Entity[] EMPTY = new Entity[0];
+
+    /**
+     * The initial capacity of a cell.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * The entities in this cell.
+     */
+    private Entity[] entities = new Entity[INITIAL_CAPACITY];
+
+    /**
+     * The number of entities in this cell.
+     */
+    private int size = 0;
+
+    /**
+     * The snapshot of the entities in this cell, or <code>null</code> if it
+     * must be rebuilt.
+     */
+    private volatile Entity[] snapshot = EMPTY;
+
+    /**
+     * Adds an entity to this cell.
+     *
+     * @param entity The entity.
+     */
+    void add(final E entity) {
+        if (size == entities.length) {
+            entities = Arrays.copyOf(entities, size * 2);
+        }
+        entity.setCellSlot(size);
+        entities[size++] = entity;
+        snapshot = null;
+    }
+
+    /**
+     * Removes an entity from this cell. The last entity takes its slot.
+     *
+     * @param entity The entity.
+     * @return <code>true</code> if the entity was in this cell,
+     * <code>false</code> if not.
+     */
+    boolean remove(final E entity) {
+        final int slot = entity.getCellSlot();
+        if (slot < 0 || slot >= size || entities[slot] != entity) {
+            return false;
+        }
+        final Entity last = entities[--size];
+        entities[slot] = last;
+        last.setCellSlot(slot);
+        entities[size] = null;
+        entity.setCellSlot(-1);
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * Gets the number of entities in this cell.
+     *
+     * @return The number of entities.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets a snapshot of the entities in this cell. The returned array must
+     * not be modified.
+     *
+     * @param lock The lock changes to this cell are made under.
+     * @return The snapshot.
+     */
+    Entity[] snapshot(final Object lock) {
+        Entity[] entities = snapshot;
+        if (entities == null) {
+            synchronized (lock) {
+                entities = snapshot;
+                if (entities == null) {
+                    entities = size == 0 ? EMPTY : Arrays.copyOf(this.entities, size);
+                    snapshot = entities;
+                }
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * Adds every entity in this cell which is within distance of a location
+     * to a buffer.
+     *
+     * @param lock     The lock changes to this cell are made under.
+     * @param location The location.
+     * @param buffer   The buffer.
+     * @param count    The number of entities found so far.
+     * @return The number of entities found so far, including those in this
+     * cell. This may exceed the length of the buffer.
+     */
+    @SuppressWarnings("unchecked")
+    int collect(final Object lock, final Location location, final E[] buffer, int count) {
+        for (final Entity entity : snapshot(lock)) {
+            if (entity.getLocation().isWithinDistance(location)) {
+                if (count < buffer.length) {
+                    buffer[count] = (E) entity;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
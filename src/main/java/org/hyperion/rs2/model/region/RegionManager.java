@@ -5,12 +5,11 @@ import org.hyperion.rs2.model.Location;
 import org.hyperion.rs2.model.NPC;
 import org.hyperion.rs2.model.Player;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Manages the world regions.
@@ -24,6 +23,23 @@ public class RegionManager {
      */
     public static final int REGION_SIZE = 32;
 
+    /**
+     * The smallest offset from a location, on each axis, at which an entity
+     * is within distance of it.
+     */
+    static final int LOCAL_MIN_OFFSET = -14;
+
+    /**
+     * The largest offset from a location, on each axis, at which an entity is
+     * within distance of it.
+     */
+    static final int LOCAL_MAX_OFFSET = 15;
+
+    /**
+     * The initial size of the buffers used to build local entity collections.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 16;
+
     /**
      * The lower bound that splits the region in half.
      */
@@ -31,9 +47,61 @@ public class RegionManager {
     private static final int LOWER_BOUND = REGION_SIZE / 2 - 1;
 
     /**
-     * The active (loaded) region map.
+     * The active (loaded) region table.
+     */
+    private final RegionTable activeRegions = new RegionTable();
+
+    /**
+     * A queue of entities whose move between regions has been deferred.
+     */
+    private final Queue<Entity> deferredRegionChanges = new ConcurrentLinkedQueue<>();
+
+    /**
+     * A flag indicating moves between regions are being deferred.
+     */
+    private volatile boolean deferringRegionChanges = false;
+
+    /**
+     * Checks if moves between regions are being deferred.
+     *
+     * @return <code>true</code> if so, <code>false</code> if not.
+     */
+    public boolean isDeferringRegionChanges() {
+        return deferringRegionChanges;
+    }
+
+    /**
+     * Sets the flag indicating moves between regions are deferred. While it
+     * is set, entities which change region are queued instead of modifying
+     * the region lists, so several regions can be ticked at once.
+     *
+     * @param deferringRegionChanges The flag.
+     */
+    public void setDeferringRegionChanges(final boolean deferringRegionChanges) {
+        this.deferringRegionChanges = deferringRegionChanges;
+    }
+
+    /**
+     * Queues an entity whose move between regions has been deferred.
+     *
+     * @param entity The entity.
+     */
+    public void deferRegionChange(final Entity entity) {
+        deferredRegionChanges.add(entity);
+    }
+
+    /**
+     * Applies any deferred moves between regions which have not been applied
+     * yet, in the order they were deferred.
      */
-    private final Map<RegionCoordinates, Region> activeRegions = new HashMap<>();
+    public void mergeDeferredRegionChanges() {
+        Entity entity;
+        while ((entity = deferredRegionChanges.poll()) != null) {
+            if (entity.isRegionChangeDeferred()) {
+                entity.updateRegion();
+            }
+        }
+    }
 
     /**
      * Gets the local players around an entity.
@@ -42,16 +110,58 @@ public class RegionManager {
      * @return The collection of local players.
      */
     public Collection<Player> getLocalPlayers(final Entity entity) {
-        final List<Player> localPlayers = new LinkedList<>();
-        final Region[] regions = getSurroundingRegions(entity.getLocation());
-        for (final Region region : regions) {
-            for (final Player player : region.getPlayers()) {
-                if (player.getLocation().isWithinDistance(entity.getLocation())) {
-                    localPlayers.add(player);
-                }
+        Player[] buffer = new Player[INITIAL_BUFFER_SIZE];
+        int count;
+        while ((count = getLocalPlayers(entity, buffer)) > buffer.length) {
+            buffer = new Player[count];
+        }
+        return Collections.unmodifiableList(Arrays.asList(buffer).subList(0, count));
+    }
+
+    /**
+     * Fills a buffer with the local players around an entity. Only the cells
+     * of the regions which overlap the viewing distance are visited.
+     * <p>
+     * If there are more local players than the buffer can hold, the buffer is
+     * filled and the total number is still returned, so the caller can retry
+     * with a larger buffer.
+     *
+     * @param entity The entity.
+     * @param buffer The buffer.
+     * @return The number of local players.
+     */
+    public int getLocalPlayers(final Entity entity, final Player[] buffer) {
+        final Location location = entity.getLocation();
+        int count = 0;
+        for (int y = (location.getY() + LOCAL_MIN_OFFSET) / REGION_SIZE; y <= (location.getY() + LOCAL_MAX_OFFSET) / REGION_SIZE; y++) {
+            for (int x = (location.getX() + LOCAL_MIN_OFFSET) / REGION_SIZE; x <= (location.getX() + LOCAL_MAX_OFFSET) / REGION_SIZE; x++) {
+                count = getRegion(x, y).getLocalPlayers(location, buffer, count);
             }
         }
-        return Collections.unmodifiableCollection(localPlayers);
+        return count;
+    }
+
+    /**
+     * Fills a buffer with the local NPCs around an entity. Only the cells of
+     * the regions which overlap the viewing distance are visited.
+     * <p>
+     * If there are more local NPCs than the buffer can hold, the buffer is
+     * filled and the total number is still returned, so the caller can retry
+     * with a larger buffer.
+     *
+     * @param entity The entity.
+     * @param buffer The buffer.
+     * @return The number of local NPCs.
+     */
+    public int getLocalNpcs(final Entity entity, final NPC[] buffer) {
+        final Location location = entity.getLocation();
+        int count = 0;
+        for (int y = (location.getY() + LOCAL_MIN_OFFSET) / REGION_SIZE; y <= (location.getY() + LOCAL_MAX_OFFSET) / REGION_SIZE; y++) {
+            for (int x = (location.getX() + LOCAL_MIN_OFFSET) / REGION_SIZE; x <= (location.getX() + LOCAL_MAX_OFFSET) / REGION_SIZE; x++) {
+                count = getRegion(x, y).getLocalNpcs(location, buffer, count);
+            }
+        }
+        return count;
     }
 
     /**
@@ -112,14 +222,7 @@ public class RegionManager {
      * @return The region.
      */
     public Region getRegion(final int x, final int y) {
-        final RegionCoordinates key = new RegionCoordinates(x, y);
-        if (activeRegions.containsKey(key)) {
-            return activeRegions.get(key);
-        } else {
-            final Region region = new Region(key);
-            activeRegions.put(key, region);
-            return region;
-        }
+        return activeRegions.get(x, y);
     }
 
     /**
@@ -129,16 +232,12 @@ public class RegionManager {
      * @return The collection of local NPCs.
      */
     public Collection<NPC> getLocalNpcs(final Entity entity) {
-        final List<NPC> localPlayers = new LinkedList<>();
-        final Region[] regions = getSurroundingRegions(entity.getLocation());
-        for (final Region region : regions) {
-            for (final NPC npc : region.getNpcs()) {
-                if (npc.getLocation().isWithinDistance(entity.getLocation())) {
-                    localPlayers.add(npc);
-                }
-            }
+        NPC[] buffer = new NPC[INITIAL_BUFFER_SIZE];
+        int count;
+        while ((count = getLocalNpcs(entity, buffer)) > buffer.length) {
+            buffer = new NPC[count];
         }
-        return Collections.unmodifiableCollection(localPlayers);
+        return Collections.unmodifiableList(Arrays.asList(buffer).subList(0, count));
     }
 
     /**
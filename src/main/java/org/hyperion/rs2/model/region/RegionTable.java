@@ -0,0 +1,76 @@
+package org.hyperion.rs2.model.region;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A table of regions indexed by their coordinates.
+ * <p>
+ * Regions within the bounds of the map are kept in a flat array, so looking
+ * one up is a bounds check and an array read with no allocation. Regions
+ * outside the bounds, which should not normally be used, are kept in a map
+ * keyed by their packed coordinates.
+ * <p>
+ * Regions are created the first time they are looked up. Lookups may happen
+ * from several threads at once, and every thread is given the same region.
+ */
+public class RegionTable {
+
+    /**
+     * The number of regions along each side of the map. Coordinates on the
+     * map are 14-bit numbers, so this covers every valid location.
+     */
+    public static final int REGIONS_PER_SIDE = (1 << 14) / RegionManager.REGION_SIZE;
+
+    /**
+     * The regions within the bounds of the map.
+     */
+    private final AtomicReferenceArray<Region> regions = new AtomicReferenceArray<>(REGIONS_PER_SIDE * REGIONS_PER_SIDE);
+
+    /**
+     * The regions outside the bounds of the map, keyed by their packed
+     * coordinates.
+     */
+    private final Map<Long, Region> outOfBoundsRegions = new ConcurrentHashMap<>();
+
+    /**
+     * Packs region coordinates into a single key.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return The key.
+     */
+    private static long pack(final int x, final int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets a region by its coordinates, creating it if it does not exist.
+     *
+     * @param x The x coordinate.
+     * @param y The y coordinate.
+     * @return The region.
+     */
+    public Region get(final int x, final int y) {
+        if (x < 0 || y < 0 || x >= REGIONS_PER_SIDE || y >= REGIONS_PER_SIDE) {
+            return outOfBoundsRegions.computeIfAbsent(pack(x, y), key -> new Region(new RegionCoordinates(x, y)));
+        }
+        final int index = x * REGIONS_PER_SIDE + y;
+        final Region region = regions.get(index);
+        if (region != null) {
+            return region;
+        }
+
+        /*
+         * Another thread may create the same region at the same time, in
+         * which case the region it stored first is used by both.
+         */
+        final Region created = new Region(new RegionCoordinates(x, y));
+        if (regions.compareAndSet(index, null, created)) {
+            return created;
+        }
+        return regions.get(index);
+    }
+
+}
@@ -68,6 +68,11 @@ public class ActionSender {
         player.getEquipment().addListener(new EquipmentContainerListener(player));
         player.getEquipment().addListener(new WeaponContainerListener(player));
 
+        /*
+         * The login packets are sent straight away rather than at the end of
+         * the next cycle.
+         */
+        player.flush();
         return this;
     }
 
@@ -191,7 +196,7 @@ public class ActionSender {
      * @return The action sender instance, for chaining.
      */
     public ActionSender sendLogout() {
-        player.write(new PacketBuilder(109).toPacket()); // TODO IoFuture
+        player.writeNow(new PacketBuilder(109).toPacket()); // TODO IoFuture
         return this;
     }
 
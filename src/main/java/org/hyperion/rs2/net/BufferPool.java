@@ -0,0 +1,197 @@
+package org.hyperion.rs2.net;
+
+import org.apache.mina.core.buffer.IoBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A pool of direct buffers, used for packets and the buffers written to
+ * sessions.
+ * <p>
+ * Buffers are grouped into size classes, each twice the size of the last.
+ * Every thread has its own small arena of free buffers, so the update workers
+ * can take and return buffers without contending with each other. When an
+ * arena is empty or full, buffers are taken from or returned to a queue
+ * shared by every thread.
+ * <p>
+ * The pool keeps the underlying <code>ByteBuffer</code>s rather than the
+ * <code>IoBuffer</code>s which wrap them, because an <code>IoBuffer</code>
+ * cannot be expanded again once a derived buffer has been made from it. A
+ * buffer must not be used after it has been released, and must not be
+ * released twice.
+ */
+public final class BufferPool {
+
+    /**
+     * The size of the smallest class, as a power of two.
+     */
+    private static final int MIN_SHIFT = 6;
+
+    /**
+     * The size of the largest class, as a power of two. Larger buffers are
+     * not pooled.
+     */
+    private static final int MAX_SHIFT = 16;
+
+    /**
+     * The number of size classes.
+     */
+    private static final int CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+
+    /**
+     * The number of free buffers of each class kept by a thread.
+     */
+    private static final int ARENA_CAPACITY = 32;
+
+    /**
+     * The number of free buffers of each class kept in the shared queues.
+     */
+    private static final int SHARED_CAPACITY = 1024;
+
+    /**
+     * The shared queues of free buffers, indexed by size class.
+     */
+    private static final ArrayBlockingQueue<ByteBuffer>[] shared = createSharedQueues();
+
+    /**
+     * The arena of the current thread.
+     */
+    private static final ThreadLocal<Arena> arena = ThreadLocal.withInitial(Arena::new);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private BufferPool() {
+    }
+
+    /**
+     * Creates the shared queues.
+     *
+     * @return The shared queues.
+     */
+    @SuppressWarnings("unchecked")
+    private static ArrayBlockingQueue<ByteBuffer>[] createSharedQueues() {
+        final ArrayBlockingQueue<ByteBuffer>[] queues = new ArrayBlockingQueue[CLASSES];
+        for (int i = 0; i < CLASSES; i++) {
+            queues[i] = new ArrayBlockingQueue<>(SHARED_CAPACITY);
+        }
+        return queues;
+    }
+
+    /**
+     * Gets the size class which holds buffers of at least a capacity.
+     *
+     * @param capacity The capacity.
+     * @return The size class, or <code>CLASSES</code> if the capacity is
+     * too large to be pooled.
+     */
+    private static int classFor(final int capacity) {
+        if (capacity <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * Takes a buffer from the pool. The buffer is cleared, big-endian and
+     * has at least the requested capacity.
+     *
+     * @param capacity The minimum capacity.
+     * @return The buffer.
+     */
+    public static IoBuffer acquire(final int capacity) {
+        final int sizeClass = classFor(capacity);
+        if (sizeClass >= CLASSES) {
+            return IoBuffer.allocate(capacity, true);
+        }
+        ByteBuffer buffer = arena.get().poll(sizeClass);
+        if (buffer == null) {
+            buffer = shared[sizeClass].poll();
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(1 << (sizeClass + MIN_SHIFT));
+        } else {
+            buffer.clear();
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        }
+        return IoBuffer.wrap(buffer);
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers which were not taken from the
+     * pool are accepted as long as their capacity matches a size class, which
+     * is the case for pooled buffers which have been expanded. Other buffers
+     * are ignored.
+     *
+     * @param buffer The buffer.
+     */
+    public static void release(final IoBuffer buffer) {
+        final ByteBuffer buf = buffer.buf();
+        final int capacity = buf.capacity();
+        if (!buf.isDirect() || buf.isReadOnly() || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        final int sizeClass = classFor(capacity);
+        if (capacity < 1 << MIN_SHIFT || sizeClass >= CLASSES) {
+            return;
+        }
+        if (!arena.get().offer(sizeClass, buf)) {
+            shared[sizeClass].offer(buf);
+        }
+    }
+
+    /**
+     * The free buffers kept by a single thread.
+     */
+    private static final class Arena {
+
+        /**
+         * The free buffers, indexed by size class.
+         */
+        private final ByteBuffer[][] buffers = new ByteBuffer[CLASSES][ARENA_CAPACITY];
+
+        /**
+         * The number of free buffers, indexed by size class.
+         */
+        private final int[] counts = new int[CLASSES];
+
+        /**
+         * Takes a free buffer.
+         *
+         * @param sizeClass The size class.
+         * @return The buffer, or <code>null</code> if there are none.
+         */
+        private ByteBuffer poll(final int sizeClass) {
+            final int count = counts[sizeClass];
+            if (count == 0) {
+                return null;
+            }
+            final ByteBuffer buffer = buffers[sizeClass][count - 1];
+            buffers[sizeClass][count - 1] = null;
+            counts[sizeClass] = count - 1;
+            return buffer;
+        }
+
+        /**
+         * Keeps a free buffer.
+         *
+         * @param sizeClass The size class.
+         * @param buffer    The buffer.
+         * @return <code>true</code> if the buffer was kept, <code>false</code>
+         * if the arena is full.
+         */
+        private boolean offer(final int sizeClass, final ByteBuffer buffer) {
+            final int count = counts[sizeClass];
+            if (count == ARENA_CAPACITY) {
+                return false;
+            }
+            buffers[sizeClass][count] = buffer;
+            counts[sizeClass] = count + 1;
+            return true;
+        }
+
+    }
+
+}
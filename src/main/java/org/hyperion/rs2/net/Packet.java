@@ -22,6 +22,11 @@ public class Packet {
      * The payload.
      */
     private final IoBuffer payload;
+    /**
+     * The pooled buffer which backs the payload, or <code>null</code> if
+     * there is none or it has been released.
+     */
+    private IoBuffer pooledBuffer;
 
     /**
      * Creates a packet.
@@ -31,9 +36,35 @@ public class Packet {
      * @param payload The payload.
      */
     public Packet(final int opcode, final Type type, final IoBuffer payload) {
+        this(opcode, type, payload, null);
+    }
+
+    /**
+     * Creates a packet whose payload is backed by a buffer from the
+     * <code>BufferPool</code>.
+     *
+     * @param opcode       The opcode.
+     * @param type         The type.
+     * @param payload      The payload.
+     * @param pooledBuffer The pooled buffer which backs the payload.
+     */
+    public Packet(final int opcode, final Type type, final IoBuffer payload, final IoBuffer pooledBuffer) {
         this.opcode = opcode;
         this.type = type;
         this.payload = payload;
+        this.pooledBuffer = pooledBuffer;
+    }
+
+    /**
+     * Returns the buffer which backs the payload to the
+     * <code>BufferPool</code>, if there is one. The payload must not be used
+     * afterwards. Releasing a packet more than once has no effect.
+     */
+    public void release() {
+        if (pooledBuffer != null) {
+            BufferPool.release(pooledBuffer);
+            pooledBuffer = null;
+        }
     }
 
     /**
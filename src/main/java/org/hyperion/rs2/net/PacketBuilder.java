@@ -35,9 +35,14 @@ public class PacketBuilder {
     private final Type type;
 
     /**
-     * The payload.
+     * The initial capacity of the payload.
      */
-    private final IoBuffer payload = IoBuffer.allocate(16);
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The payload, which is taken from the <code>BufferPool</code>.
+     */
+    private final IoBuffer payload;
 
     /**
      * The current bit position.
@@ -67,10 +72,23 @@ public class PacketBuilder {
      * @param type   The type.
      */
     public PacketBuilder(final int opcode, final Type type) {
+        this(opcode, type, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a packet builder with the specified opcode, type and initial
+     * capacity. The payload still expands if it needs to, but starting with
+     * a capacity close to the final length avoids copying it as it grows.
+     *
+     * @param opcode   The opcode.
+     * @param type     The type.
+     * @param capacity The initial capacity.
+     */
+    public PacketBuilder(final int opcode, final Type type, final int capacity) {
         this.opcode = opcode;
         this.type = type;
+        this.payload = BufferPool.acquire(capacity);
         payload.setAutoExpand(true);
-        payload.setAutoShrink(true);
     }
 
     /**
@@ -107,12 +125,37 @@ public class PacketBuilder {
     }
 
     /**
-     * Converts this PacketBuilder to a packet.
+     * Converts this PacketBuilder to a packet. The packet takes over the
+     * payload, and returns it to the <code>BufferPool</code> when it is
+     * released.
      *
      * @return The Packet object.
      */
     public Packet toPacket() {
-        return new Packet(opcode, type, payload.flip().asReadOnlyBuffer());
+        return new Packet(opcode, type, payload.flip().asReadOnlyBuffer(), payload);
+    }
+
+    /**
+     * Returns the payload to the <code>BufferPool</code>. This may be called
+     * once the bytes have been copied somewhere else, and the builder, and
+     * any packet made from it, must not be used afterwards.
+     */
+    public void release() {
+        BufferPool.release(payload);
+    }
+
+    /**
+     * Copies the bytes written so far into an array. The builder is not
+     * changed.
+     *
+     * @return The bytes.
+     */
+    public byte[] toByteArray() {
+        final IoBuffer buffer = payload.duplicate();
+        buffer.flip();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
     }
 
     /**
@@ -199,31 +242,32 @@ public class PacketBuilder {
      * @return The PacketBuilder instance, for chaining.
      */
     public PacketBuilder putBits(int numBits, final int value) {
-        if (!payload.hasArray()) {
-            throw new UnsupportedOperationException("The IoBuffer implementation must support array() for bit usage.");
-        }
-
         final int bytes = (int) Math.ceil((double) numBits / 8D) + 1;
         payload.expand((bitPosition + 7) / 8 + bytes);
 
-        final byte[] buffer = payload.array();
-
+        /*
+         * The payload is a direct buffer, so the bytes are accessed by index
+         * rather than through a backing array.
+         */
         int bytePos = bitPosition >> 3;
         int bitOffset = 8 - (bitPosition & 7);
         bitPosition += numBits;
 
         for (; numBits > bitOffset; bitOffset = 8) {
-            buffer[bytePos] &= ~BIT_MASK_OUT[bitOffset];
-            buffer[bytePos++] |= (value >> (numBits - bitOffset)) & BIT_MASK_OUT[bitOffset];
+            int b = payload.get(bytePos) & ~BIT_MASK_OUT[bitOffset];
+            b |= (value >> (numBits - bitOffset)) & BIT_MASK_OUT[bitOffset];
+            payload.put(bytePos++, (byte) b);
             numBits -= bitOffset;
         }
+        int b = payload.get(bytePos);
         if (numBits == bitOffset) {
-            buffer[bytePos] &= ~BIT_MASK_OUT[bitOffset];
-            buffer[bytePos] |= value & BIT_MASK_OUT[bitOffset];
+            b &= ~BIT_MASK_OUT[bitOffset];
+            b |= value & BIT_MASK_OUT[bitOffset];
         } else {
-            buffer[bytePos] &= ~(BIT_MASK_OUT[numBits] << (bitOffset - numBits));
-            buffer[bytePos] |= (value & BIT_MASK_OUT[numBits]) << (bitOffset - numBits);
+            b &= ~(BIT_MASK_OUT[numBits] << (bitOffset - numBits));
+            b |= (value & BIT_MASK_OUT[numBits]) << (bitOffset - numBits);
         }
+        payload.put(bytePos, (byte) b);
         return this;
     }
 
@@ -29,6 +29,31 @@ public class PacketManager {
      */
     private final PacketHandler[] packetHandlers = new PacketHandler[256];
 
+    /**
+     * The statistics for the per-player packet queues.
+     */
+    private final PacketQueueStatistics queueStatistics = new PacketQueueStatistics();
+
+    /**
+     * The dispatch mode.
+     */
+    private volatile DispatchMode dispatchMode = DispatchMode.IMMEDIATE;
+
+    /**
+     * The policy applied when a player's packet queue is full.
+     */
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    /**
+     * The capacity of each player's packet queue.
+     */
+    private volatile int queueCapacity = 64;
+
+    /**
+     * The maximum number of packets handled for each player per tick.
+     */
+    private volatile int packetBudget = 16;
+
     /**
      * Creates the packet manager.
      */
@@ -63,6 +88,146 @@ public class PacketManager {
         packetHandlers[id] = handler;
     }
 
+    /**
+     * Gets the dispatch mode.
+     *
+     * @return The dispatch mode.
+     */
+    public DispatchMode getDispatchMode() {
+        return dispatchMode;
+    }
+
+    /**
+     * Sets the dispatch mode.
+     *
+     * @param dispatchMode The dispatch mode.
+     */
+    public void setDispatchMode(final DispatchMode dispatchMode) {
+        this.dispatchMode = dispatchMode;
+    }
+
+    /**
+     * Gets the policy applied when a player's packet queue is full.
+     *
+     * @return The overflow policy.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets the policy applied when a player's packet queue is full.
+     *
+     * @param overflowPolicy The overflow policy.
+     */
+    public void setOverflowPolicy(final OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Gets the capacity of each player's packet queue.
+     *
+     * @return The queue capacity.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the capacity of each player's packet queue. This only affects
+     * players who log in afterwards.
+     *
+     * @param queueCapacity The queue capacity.
+     * @throws IllegalArgumentException if the capacity is less than one.
+     */
+    public void setQueueCapacity(final int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("The queue capacity must be at least one.");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gets the maximum number of packets handled for each player per tick.
+     *
+     * @return The packet budget.
+     */
+    public int getPacketBudget() {
+        return packetBudget;
+    }
+
+    /**
+     * Sets the maximum number of packets handled for each player per tick.
+     *
+     * @param packetBudget The packet budget.
+     * @throws IllegalArgumentException if the budget is less than one.
+     */
+    public void setPacketBudget(final int packetBudget) {
+        if (packetBudget < 1) {
+            throw new IllegalArgumentException("The packet budget must be at least one.");
+        }
+        this.packetBudget = packetBudget;
+    }
+
+    /**
+     * Gets the statistics for the per-player packet queues.
+     *
+     * @return The queue statistics.
+     */
+    public PacketQueueStatistics getQueueStatistics() {
+        return queueStatistics;
+    }
+
+    /**
+     * Adds a packet to a player's queue, to be handled at the start of the
+     * next tick. If the queue is full, the packet is dropped, and the player
+     * is also disconnected if the overflow policy says so.
+     *
+     * @param player The player.
+     * @param packet The packet.
+     */
+    public void queue(final Player player, final Packet packet) {
+        if (player.queuePacket(packet)) {
+            return;
+        }
+        packet.release();
+        queueStatistics.recordDrop();
+        if (overflowPolicy == OverflowPolicy.DISCONNECT && player.getSession().isConnected()) {
+            queueStatistics.recordDisconnect();
+            logger.warning("Disconnecting " + player + " : packet queue is full.");
+            player.getSession().close(false);
+        }
+    }
+
+    /**
+     * Handles the queued packets of every player, up to the packet budget for
+     * each player. Packets over the budget stay queued until the next tick.
+     * This must be called from the logic thread.
+     *
+     * @param players The players.
+     */
+    public void handleQueuedPackets(final Iterable<Player> players) {
+        final int budget = packetBudget;
+        int handled = 0;
+        int maxDepth = 0;
+        for (final Player player : players) {
+            final int depth = player.getQueuedPacketCount();
+            if (depth > maxDepth) {
+                maxDepth = depth;
+            }
+            Packet packet;
+            for (int i = 0; i < budget && (packet = player.pollQueuedPacket()) != null; i++) {
+                try {
+                    handle(player.getSession(), packet);
+                } finally {
+                    packet.release();
+                }
+                handled++;
+            }
+        }
+        queueStatistics.recordTick(handled, maxDepth);
+    }
+
     /**
      * Handles a packet.
      *
@@ -78,4 +243,41 @@ public class PacketManager {
         }
     }
 
+    /**
+     * The ways in which incoming packets can be dispatched.
+     */
+    public enum DispatchMode {
+
+        /**
+         * Each packet is submitted to the logic thread as soon as it has been
+         * decoded.
+         */
+        IMMEDIATE,
+
+        /**
+         * Packets are added to a bounded queue for each player, and the
+         * queues are drained at the start of each tick under a per-player
+         * budget.
+         */
+        TICK
+
+    }
+
+    /**
+     * The actions taken when a player's packet queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * The packet is dropped.
+         */
+        DROP,
+
+        /**
+         * The packet is dropped and the player is disconnected.
+         */
+        DISCONNECT
+
+    }
+
 }
@@ -0,0 +1,161 @@
+package org.hyperion.rs2.net;
+
+import org.hyperion.rs2.TickStatistics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects statistics for the per-player queues of incoming packets. Drops
+ * are recorded by the network threads, and everything else by the logic
+ * thread. The statistics may be read from any thread.
+ * <p>
+ * A summary is logged every {@link TickStatistics#WINDOW} ticks. The summary
+ * is logged as a warning if any packet was dropped in the window.
+ */
+public class PacketQueueStatistics {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger logger = Logger.getLogger(PacketQueueStatistics.class.getName());
+
+    /**
+     * The total number of packets handled from the queues.
+     */
+    private final LongAdder handled = new LongAdder();
+
+    /**
+     * The total number of packets dropped because a queue was full.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * The total number of players disconnected because their queue was full.
+     */
+    private final LongAdder disconnects = new LongAdder();
+
+    /**
+     * The deepest queue seen at the start of the last tick.
+     */
+    private volatile int lastMaxDepth;
+
+    /**
+     * The deepest queue seen at the start of any tick.
+     */
+    private volatile int maxDepth;
+
+    /**
+     * The deepest queue seen in the current window.
+     */
+    private int windowMaxDepth;
+
+    /**
+     * The number of ticks in the current window.
+     */
+    private int windowTicks;
+
+    /**
+     * The number of packets dropped before the current window.
+     */
+    private long windowStartDropped;
+
+    /**
+     * The number of packets handled before the current window.
+     */
+    private long windowStartHandled;
+
+    /**
+     * Records a packet which was dropped because a queue was full.
+     */
+    public void recordDrop() {
+        dropped.increment();
+    }
+
+    /**
+     * Records a player who was disconnected because their queue was full.
+     */
+    public void recordDisconnect() {
+        disconnects.increment();
+    }
+
+    /**
+     * Records the queues drained at the start of a tick.
+     *
+     * @param handled  The number of packets handled.
+     * @param maxDepth The deepest queue before it was drained.
+     */
+    public void recordTick(final int handled, final int maxDepth) {
+        this.handled.add(handled);
+        lastMaxDepth = maxDepth;
+        if (maxDepth > this.maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+        if (maxDepth > windowMaxDepth) {
+            windowMaxDepth = maxDepth;
+        }
+
+        if (++windowTicks == TickStatistics.WINDOW) {
+            final long totalDropped = dropped.sum();
+            final long totalHandled = this.handled.sum();
+            final long windowDropped = totalDropped - windowStartDropped;
+            final Level level = windowDropped > 0 ? Level.WARNING : Level.FINE;
+            if (logger.isLoggable(level)) {
+                logger.log(level, "Packets handled : " + (totalHandled - windowStartHandled) + ", dropped : " + windowDropped
+                    + ", max queue depth : " + windowMaxDepth + " (" + windowTicks + " ticks)");
+            }
+            windowTicks = 0;
+            windowMaxDepth = 0;
+            windowStartDropped = totalDropped;
+            windowStartHandled = totalHandled;
+        }
+    }
+
+    /**
+     * Gets the total number of packets handled from the queues.
+     *
+     * @return The number of packets.
+     */
+    public long getHandled() {
+        return handled.sum();
+    }
+
+    /**
+     * Gets the total number of packets dropped because a queue was full.
+     *
+     * @return The number of packets.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Gets the total number of players disconnected because their queue was
+     * full.
+     *
+     * @return The number of players.
+     */
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    /**
+     * Gets the deepest queue seen at the start of the last tick.
+     *
+     * @return The queue depth.
+     */
+    public int getLastMaxDepth() {
+        return lastMaxDepth;
+    }
+
+    /**
+     * Gets the deepest queue seen at the start of any tick.
+     *
+     * @return The queue depth.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+}
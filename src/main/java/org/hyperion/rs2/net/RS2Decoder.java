@@ -15,23 +15,44 @@ import org.hyperion.rs2.net.Packet.Type;
  */
 public class RS2Decoder extends CumulativeProtocolDecoder {
 
+    /**
+     * The session attribute holding the decoder state.
+     */
+    private static final String STATE_KEY = "decoderState";
+
+    /**
+     * The payload shared by every packet with no payload. It has nothing to
+     * read, so sharing it is safe.
+     */
+    private static final IoBuffer EMPTY_PAYLOAD = IoBuffer.allocate(0).asReadOnlyBuffer();
+
+    /**
+     * Gets the decoder state of a session, creating it the first time.
+     *
+     * @param session The session.
+     * @return The decoder state.
+     */
+    private static State getState(final IoSession session) {
+        State state = (State) session.getAttribute(STATE_KEY);
+        if (state == null) {
+            state = new State(((Player) session.getAttribute("player")).getInCipher());
+            session.setAttribute(STATE_KEY, state);
+        }
+        return state;
+    }
+
     @Override
     protected boolean doDecode(final IoSession session, final IoBuffer in, final ProtocolDecoderOutput out) throws Exception {
         /*
-         * Fetch the ISAAC cipher for this session.
+         * Fetch the decoder state for this session, which holds the ISAAC
+         * cipher and any opcode and size read so far.
          */
-        final ISAACCipher inCipher = ((Player) session.getAttribute("player")).getInCipher();
-
-        /*
-         * Fetch any cached opcodes and sizes, reset to -1 if not present.
-         */
-        int opcode = (Integer) session.getAttribute("opcode", -1);
-        int size = (Integer) session.getAttribute("size", -1);
+        final State state = getState(session);
 
         /*
          * If the opcode is not present.
          */
-        if (opcode == -1) {
+        if (state.opcode == -1) {
             /*
              * Check if it can be read.
              */
@@ -39,19 +60,13 @@ public class RS2Decoder extends CumulativeProtocolDecoder {
                 /*
                  * Read and decrypt the opcode.
                  */
-                opcode = in.get() & 0xFF;
-                opcode = (opcode - inCipher.getNextValue()) & 0xFF;
+                final int opcode = in.get() & 0xFF;
+                state.opcode = (opcode - state.inCipher.getNextValue()) & 0xFF;
 
                 /*
                  * Find the packet size.
                  */
-                size = Constants.PACKET_SIZES[opcode];
-
-                /*
-                 * Set the cached opcode and size.
-                 */
-                session.setAttribute("opcode", opcode);
-                session.setAttribute("size", size);
+                state.size = Constants.PACKET_SIZES[state.opcode];
             } else {
                 /*
                  * We need to wait for more data.
@@ -63,16 +78,15 @@ public class RS2Decoder extends CumulativeProtocolDecoder {
         /*
          * If the packet is variable-length.
          */
-        if (size == -1) {
+        if (state.size == -1) {
             /*
              * Check if the size can be read.
              */
             if (in.remaining() >= 1) {
                 /*
-                 * Read the packet size and cache it.
+                 * Read the packet size.
                  */
-                size = in.get() & 0xFF;
-                session.setAttribute("size", size);
+                state.size = in.get() & 0xFF;
             } else {
                 /*
                  * We need to wait for more data.
@@ -84,26 +98,37 @@ public class RS2Decoder extends CumulativeProtocolDecoder {
         /*
          * If the packet payload (data) can be read.
          */
+        final int size = state.size;
         if (in.remaining() >= size) {
             /*
-             * Read it.
+             * Packets are handled by the logic thread after this method has
+             * returned, when the input buffer may already have been reused,
+             * so the payload is copied into a pooled buffer. It is returned to
+             * the pool once the packet has been handled.
              */
-            final byte[] data = new byte[size];
-            in.get(data);
-            final IoBuffer payload = IoBuffer.allocate(data.length);
-            payload.put(data);
-            payload.flip();
+            final Packet packet;
+            if (size == 0) {
+                packet = new Packet(state.opcode, Type.FIXED, EMPTY_PAYLOAD);
+            } else {
+                final IoBuffer payload = BufferPool.acquire(size);
+                final int limit = in.limit();
+                in.limit(in.position() + size);
+                payload.put(in);
+                in.limit(limit);
+                payload.flip();
+                packet = new Packet(state.opcode, Type.FIXED, payload, payload);
+            }
 
             /*
              * Produce and write the packet object.
              */
-            out.write(new Packet(opcode, Type.FIXED, payload));
+            out.write(packet);
 
             /*
-             * Reset the cached opcode and sizes.
+             * Reset the opcode and size.
              */
-            session.setAttribute("opcode", -1);
-            session.setAttribute("size", -1);
+            state.opcode = -1;
+            state.size = -1;
 
             /*
              * Indicate we are ready to read another packet.
@@ -117,4 +142,37 @@ public class RS2Decoder extends CumulativeProtocolDecoder {
         return false;
     }
 
+    /**
+     * The decoder state of a single session.
+     */
+    private static final class State {
+
+        /**
+         * The in ISAAC cipher.
+         */
+        private final ISAACCipher inCipher;
+
+        /**
+         * The opcode of the packet being decoded, or <code>-1</code> if it
+         * has not been read yet.
+         */
+        private int opcode = -1;
+
+        /**
+         * The size of the packet being decoded, or <code>-1</code> if it has
+         * not been read yet.
+         */
+        private int size = -1;
+
+        /**
+         * Creates the decoder state.
+         *
+         * @param inCipher The in ISAAC cipher.
+         */
+        private State(final ISAACCipher inCipher) {
+            this.inCipher = inCipher;
+        }
+
+    }
+
 }
@@ -13,6 +13,71 @@ import org.hyperion.rs2.model.Player;
  */
 public class RS2Encoder implements ProtocolEncoder {
 
+    /**
+     * Gets the number of bytes a packet takes up once it has been encoded.
+     *
+     * @param p The packet.
+     * @return The encoded length.
+     */
+    public static int getEncodedLength(final Packet p) {
+        if (p.isRaw()) {
+            return p.getLength();
+        }
+        int finalLength = p.getLength() + 1;
+        switch (p.getType()) {
+            case VARIABLE -> finalLength += 1;
+            case VARIABLE_SHORT -> finalLength += 2;
+        }
+        return finalLength;
+    }
+
+    /**
+     * Encodes a packet into a buffer. The buffer must have at least
+     * {@link #getEncodedLength(Packet)} bytes remaining.
+     *
+     * @param p         The packet.
+     * @param outCipher The out ISAAC cipher, used to encrypt the opcode.
+     * @param buffer    The buffer.
+     */
+    public static void encode(final Packet p, final ISAACCipher outCipher, final IoBuffer buffer) {
+        /*
+         * Check what type the packet is.
+         */
+        if (p.isRaw()) {
+            /*
+             * If the packet is raw, write its payload.
+             */
+            buffer.put(p.getPayload());
+            return;
+        }
+
+        /*
+         * Get the packet attributes.
+         */
+        int opcode = p.getOpcode();
+        final Packet.Type type = p.getType();
+        final int length = p.getLength();
+
+        /*
+         * Encrypt the packet opcode.
+         */
+        opcode += outCipher.getNextValue();
+
+        /*
+         * Write the opcode (and length if the packet is variable-length).
+         */
+        buffer.put((byte) opcode);
+        switch (type) {
+            case VARIABLE -> buffer.put((byte) length);
+            case VARIABLE_SHORT -> buffer.putShort((short) length);
+        }
+
+        /*
+         * Write the payload itself.
+         */
+        buffer.put(p.getPayload());
+    }
+
     @Override
     public void encode(final IoSession session, final Object in, final ProtocolEncoderOutput out) throws Exception {
         final Packet p = (Packet) in;
@@ -32,45 +97,11 @@ public class RS2Encoder implements ProtocolEncoder {
             final ISAACCipher outCipher = ((Player) session.getAttribute("player")).getOutCipher();
 
             /*
-             * Get the packet attributes.
-             */
-            int opcode = p.getOpcode();
-            final Packet.Type type = p.getType();
-            final int length = p.getLength();
-
-            /*
-             * Encrypt the packet opcode.
-             */
-            opcode += outCipher.getNextValue();
-
-            /*
-             * Compute the required size for the buffer.
-             */
-            int finalLength = length + 1;
-            switch (type) {
-                case VARIABLE -> finalLength += 1;
-                case VARIABLE_SHORT -> finalLength += 2;
-            }
-
-            /*
-             * Create the buffer and write the opcode (and length if the
-             * packet is variable-length).
-             */
-            final IoBuffer buffer = IoBuffer.allocate(finalLength);
-            buffer.put((byte) opcode);
-            switch (type) {
-                case VARIABLE -> buffer.put((byte) length);
-                case VARIABLE_SHORT -> buffer.putShort((short) length);
-            }
-
-            /*
-             * Write the payload itself.
-             */
-            buffer.put(p.getPayload());
-
-            /*
-             * Flip and dispatch the packet.
+             * Create the buffer, encode the packet into it, then flip and
+             * dispatch it.
              */
+            final IoBuffer buffer = IoBuffer.allocate(getEncodedLength(p));
+            encode(p, outCipher, buffer);
             out.write(buffer.flip());
         }
     }
@@ -1,17 +1,32 @@
 package org.hyperion.rs2.net.ondemand;
 
-import java.util.concurrent.BlockingQueue;
+import org.apache.mina.core.session.IoSession;
+import org.hyperion.cache.CacheManager;
+import org.hyperion.cache.FileCache;
+import org.hyperion.cache.InvalidCacheException;
+
+import java.util.ArrayDeque;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
 
 /**
  * <p>The ondemand pool manages an executor service with various
  * ondemand workers and request queues.</p>
  *
- * <p>When an ondemand request is submitted, it is added to the appropriate
- * queue and then the workers are notified about this. The workers can then
- * service requests.</p>
+ * <p>Every session has its own queue of requests for each priority. Sessions
+ * with requests waiting are kept in a ready list for each priority, and the
+ * workers take one request at a time from the first session in the highest
+ * priority list, before moving it to the back. A client requesting the whole
+ * cache therefore gets its turn like every other client, rather than holding
+ * up all of the workers.</p>
+ *
+ * <p>When a request is submitted, a single idle worker is woken to service
+ * it. A session whose write queue holds more than the write limit is paused
+ * until enough has been sent, and a session which queues more requests than
+ * the session limit is disconnected.</p>
  *
  * @author Graham Edgecombe
  */
@@ -19,36 +34,83 @@ import java.util.concurrent.LinkedBlockingQueue;
 public class OnDemandPool {
 
     /**
-     * The thread pool size.
+     * The default thread pool size.
+     */
+    public static final int DEFAULT_POOL_SIZE = 20;
+
+    /**
+     * The default number of requests a session may have queued.
+     */
+    public static final int DEFAULT_SESSION_LIMIT = 256;
+
+    /**
+     * The default number of bytes waiting to be written to a session before
+     * its requests are held back.
+     */
+    public static final long DEFAULT_WRITE_LIMIT = 128 * 1024;
+
+    /**
+     * The number of priorities.
+     */
+    private static final int PRIORITIES = 3;
+
+    /**
+     * The session attribute holding the session's request queues.
+     */
+    private static final String QUEUE_ATTRIBUTE = "ondemand";
+
+    /**
+     * Logger instance.
      */
-    private static final int POOL_SIZE = 20;
+    private static final Logger logger = Logger.getLogger(OnDemandPool.class.getName());
 
     /**
      * The ondemand pool instance.
      */
     private static final OnDemandPool pool = new OnDemandPool();
+
+    /**
+     * The lock guarding the queues.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The condition signalled when a request is ready to be serviced.
+     */
+    private final Condition ready = lock.newCondition();
+
+    /**
+     * The sessions with requests ready to be serviced, for each priority.
+     */
+    private final ArrayDeque<SessionQueue>[] readySessions = new ArrayDeque[PRIORITIES];
+
     /**
-     * The thread pool.
+     * The thread pool size.
      */
-    private final ExecutorService service = Executors.newFixedThreadPool(POOL_SIZE);
+    private int poolSize = DEFAULT_POOL_SIZE;
+
     /**
-     * The request queues.
+     * The number of requests a session may have queued.
      */
-    private final BlockingQueue<OnDemandRequest>[] queues = new LinkedBlockingQueue[3];
+    private int sessionLimit = DEFAULT_SESSION_LIMIT;
 
     /**
-     * Creates the thread pool, request queues and workers.
+     * The number of bytes waiting to be written to a session before its
+     * requests are held back.
+     */
+    private long writeLimit = DEFAULT_WRITE_LIMIT;
+
+    /**
+     * The thread pool, or <code>null</code> if the pool has not been started.
+     */
+    private ExecutorService service;
+
+    /**
+     * Creates the request queues.
      */
     private OnDemandPool() {
-        for (int i = 0; i < queues.length; i++) {
-            queues[i] = new LinkedBlockingQueue<>();
-        }
-        for (int i = 0; i < POOL_SIZE; i++) {
-            try {
-                service.submit(new OnDemandWorker(queues));
-            } catch (final Exception e) {
-                throw new RuntimeException(e);
-            }
+        for (int i = 0; i < readySessions.length; i++) {
+            readySessions[i] = new ArrayDeque<>();
         }
     }
 
@@ -62,20 +124,310 @@ public class OnDemandPool {
     }
 
     /**
-     * Pushes a new request onto the appropriate queue and notifies the
-     * workers about this change.
+     * Starts the thread pool and the workers, which all read the shared file
+     * cache.
+     *
+     * @throws IllegalStateException if the pool has already been started.
+     */
+    public void start() {
+        final FileCache fileCache;
+        try {
+            fileCache = CacheManager.getFileCache();
+        } catch (final InvalidCacheException e) {
+            throw new RuntimeException(e);
+        }
+        lock.lock();
+        try {
+            if (service != null) {
+                throw new IllegalStateException("The ondemand pool has already been started.");
+            }
+            service = Executors.newFixedThreadPool(poolSize);
+            for (int i = 0; i < poolSize; i++) {
+                service.submit(new OnDemandWorker(fileCache, this));
+            }
+        } finally {
+            lock.unlock();
+        }
+        logger.info("Started " + poolSize + " ondemand workers.");
+    }
+
+    /**
+     * Pushes a new request onto its session's queue and, if the session was
+     * not already waiting at that priority, wakes a worker.
      *
      * @param request The ondemand request.
      */
     public void pushRequest(final OnDemandRequest request) {
         final int priority = request.getPriority() - 1;
-        if (priority < 0 || priority >= queues.length) {
+        if (priority < 0 || priority >= PRIORITIES) {
             return;
         }
-        queues[priority].offer(request);
-        synchronized (this) {
-            notifyAll();
+        final IoSession session = request.getSession();
+        lock.lock();
+        try {
+            SessionQueue queue = (SessionQueue) session.getAttribute(QUEUE_ATTRIBUTE);
+            if (queue == null) {
+                queue = new SessionQueue(session);
+                session.setAttribute(QUEUE_ATTRIBUTE, queue);
+            }
+            if (queue.closed) {
+                return;
+            }
+            if (queue.pending < sessionLimit) {
+                queue.requests[priority].add(request);
+                queue.pending++;
+                if (!queue.paused) {
+                    schedule(queue, priority);
+                }
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        logger.warning("Session exceeded the ondemand request limit : " + session.getAttribute("remote"));
+        session.close(false);
+    }
+
+    /**
+     * Takes the next request to service, waiting until there is one.
+     *
+     * @return The request.
+     * @throws InterruptedException if the worker is interrupted while
+     *                              waiting.
+     */
+    public OnDemandRequest take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                for (int priority = 0; priority < PRIORITIES; priority++) {
+                    final ArrayDeque<SessionQueue> sessions = readySessions[priority];
+                    SessionQueue queue;
+                    while ((queue = sessions.poll()) != null) {
+                        queue.scheduled[priority] = false;
+                        if (queue.closed || queue.paused || queue.requests[priority].isEmpty()) {
+                            continue;
+                        }
+                        if (queue.session.getScheduledWriteBytes() > writeLimit) {
+                            /*
+                             * The session's other priorities are dropped from
+                             * their ready lists as they come up, and all are
+                             * scheduled again when it is resumed.
+                             */
+                            queue.paused = true;
+                            continue;
+                        }
+                        final OnDemandRequest request = queue.requests[priority].poll();
+                        queue.pending--;
+                        if (!queue.requests[priority].isEmpty()) {
+                            sessions.add(queue);
+                            queue.scheduled[priority] = true;
+                        }
+                        /*
+                         * If there is more work, the next idle worker is woken
+                         * to take it, one at a time.
+                         */
+                        if (hasReadySessions()) {
+                            ready.signal();
+                        }
+                        return request;
+                    }
+                }
+                ready.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called when a message has been sent to a session, to resume the
+     * session if it was paused and its write queue has shrunk below the
+     * write limit.
+     *
+     * @param session The session.
+     */
+    public void messageSent(final IoSession session) {
+        final SessionQueue queue = (SessionQueue) session.getAttribute(QUEUE_ATTRIBUTE);
+        if (queue == null) {
+            return;
         }
+        /*
+         * The lock is always taken, as a worker may be about to pause the
+         * session after reading the size of its write queue.
+         */
+        lock.lock();
+        try {
+            if (queue.paused && !queue.closed && session.getScheduledWriteBytes() <= writeLimit) {
+                queue.paused = false;
+                for (int priority = 0; priority < PRIORITIES; priority++) {
+                    if (!queue.requests[priority].isEmpty()) {
+                        schedule(queue, priority);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called when a session has been closed, to discard its requests.
+     *
+     * @param session The session.
+     */
+    public void sessionClosed(final IoSession session) {
+        final SessionQueue queue = (SessionQueue) session.getAttribute(QUEUE_ATTRIBUTE);
+        if (queue == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            queue.closed = true;
+            queue.pending = 0;
+            for (final ArrayDeque<OnDemandRequest> requests : queue.requests) {
+                requests.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a session to the ready list of a priority, if it is not already
+     * in it, and wakes a worker. The lock must be held.
+     *
+     * @param queue    The session's queue.
+     * @param priority The priority.
+     */
+    private void schedule(final SessionQueue queue, final int priority) {
+        if (!queue.scheduled[priority]) {
+            queue.scheduled[priority] = true;
+            readySessions[priority].add(queue);
+            ready.signal();
+        }
+    }
+
+    /**
+     * Checks if any session is in a ready list. The lock must be held.
+     *
+     * @return <code>true</code> if so, <code>false</code> if not.
+     */
+    private boolean hasReadySessions() {
+        for (final ArrayDeque<SessionQueue> sessions : readySessions) {
+            if (!sessions.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the thread pool size.
+     *
+     * @return The thread pool size.
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Sets the thread pool size. This must be called before the pool is
+     * started.
+     *
+     * @param poolSize The thread pool size.
+     * @throws IllegalStateException if the pool has already been started.
+     */
+    public void setPoolSize(final int poolSize) {
+        lock.lock();
+        try {
+            if (service != null) {
+                throw new IllegalStateException("The ondemand pool has already been started.");
+            }
+            this.poolSize = poolSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the number of requests a session may have queued. Sessions which
+     * queue more are disconnected.
+     *
+     * @param sessionLimit The number of requests.
+     */
+    public void setSessionLimit(final int sessionLimit) {
+        lock.lock();
+        try {
+            this.sessionLimit = sessionLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the number of bytes waiting to be written to a session before its
+     * requests are held back.
+     *
+     * @param writeLimit The number of bytes.
+     */
+    public void setWriteLimit(final long writeLimit) {
+        lock.lock();
+        try {
+            this.writeLimit = writeLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The request queues of a single session. Guarded by the lock of the
+     * pool.
+     */
+    private static final class SessionQueue {
+
+        /**
+         * The session.
+         */
+        private final IoSession session;
+
+        /**
+         * The requests waiting, for each priority.
+         */
+        private final ArrayDeque<OnDemandRequest>[] requests = new ArrayDeque[PRIORITIES];
+
+        /**
+         * Flags indicating the session is in the ready list of each priority.
+         */
+        private final boolean[] scheduled = new boolean[PRIORITIES];
+
+        /**
+         * The number of requests waiting.
+         */
+        private int pending;
+
+        /**
+         * A flag indicating the session is held back until its write queue
+         * shrinks.
+         */
+        private boolean paused;
+
+        /**
+         * A flag indicating the session has been closed.
+         */
+        private boolean closed;
+
+        /**
+         * Creates the request queues.
+         *
+         * @param session The session.
+         */
+        private SessionQueue(final IoSession session) {
+            this.session = session;
+            for (int i = 0; i < requests.length; i++) {
+                requests[i] = new ArrayDeque<>();
+            }
+        }
+
     }
 
 }
@@ -1,10 +1,13 @@
 package org.hyperion.rs2.net.ondemand;
 
+import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
-import org.hyperion.cache.Cache;
-import org.hyperion.rs2.net.PacketBuilder;
+import org.hyperion.cache.CacheFile;
+import org.hyperion.cache.FileCache;
+import org.hyperion.rs2.net.Packet;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * <p>Represents a single 'ondemand' request. Ondemand requests are created
@@ -51,39 +54,71 @@ public class OnDemandRequest {
     }
 
     /**
-     * Services the request.
+     * The maximum number of bytes of the file in each frame.
      */
-    public void service(final Cache cache) {
+    private static final int FRAME_DATA_SIZE = 500;
+
+    /**
+     * The size of the header of each frame.
+     */
+    private static final int FRAME_HEADER_SIZE = 6;
+
+    /**
+     * Services the request. The frames of the file are taken from the file
+     * cache, and encoded if this is the first request for the file since it
+     * was last evicted. Every frame is sent in a single write of a duplicate
+     * of the shared buffer, which is in direct memory if the file cache keeps
+     * it.
+     *
+     * @param fileCache The file cache.
+     */
+    public void service(final FileCache fileCache) {
         try {
-            final byte[] data = cache.getFile(cacheId + 1, fileId).getBytes();
-            final int totalSize = data.length;
-            int roundedSize = totalSize;
-            while (roundedSize % 500 != 0) {
-                roundedSize++;
-            }
-            final int blocks = roundedSize / 500;
-            int sentBytes = 0;
-            for (int i = 0; i < blocks; i++) {
-                int blockSize = totalSize - sentBytes;
-                final PacketBuilder bldr = new PacketBuilder();
-                bldr.put((byte) cacheId);
-                bldr.put((byte) (fileId >> 8));
-                bldr.put((byte) fileId);
-                bldr.put((byte) (totalSize >> 8));
-                bldr.put((byte) totalSize);
-                bldr.put((byte) i);
-                if (blockSize > 500) {
-                    blockSize = 500;
-                }
-                bldr.put(data, sentBytes, blockSize);
-                sentBytes += blockSize;
-                session.write(bldr.toPacket());
+            final ByteBuffer frames = fileCache.getFrames(cacheId + 1, fileId, this::encode);
+            if (frames.hasRemaining()) {
+                session.write(new Packet(-1, Packet.Type.FIXED, IoBuffer.wrap(frames.duplicate())));
             }
         } catch (final IOException ex) {
             session.close(false);
         }
     }
 
+    /**
+     * Splits a file into frames of up to {@link #FRAME_DATA_SIZE} bytes, each
+     * with a header of the cache, file, total size and frame number, and
+     * writes them one after another into a single heap buffer. The file cache
+     * moves the frames into direct memory only if it keeps them.
+     *
+     * @param file The file.
+     * @return The read-only frames.
+     */
+    private ByteBuffer encode(final CacheFile file) {
+        final ByteBuffer data = file.getBuffer();
+        final int totalSize = data.remaining();
+        final int count = (totalSize + FRAME_DATA_SIZE - 1) / FRAME_DATA_SIZE;
+        final ByteBuffer frames = ByteBuffer.allocate(count * FRAME_HEADER_SIZE + totalSize);
+        for (int i = 0; i < count; i++) {
+            final int blockSize = Math.min(totalSize - i * FRAME_DATA_SIZE, FRAME_DATA_SIZE);
+            frames.put((byte) cacheId);
+            frames.put((byte) (fileId >> 8));
+            frames.put((byte) fileId);
+            frames.put((byte) (totalSize >> 8));
+            frames.put((byte) totalSize);
+            frames.put((byte) i);
+            frames.put(data.slice(data.position() + i * FRAME_DATA_SIZE, blockSize));
+        }
+        return frames.flip().asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets the session.
+     *
+     * @return The session.
+     */
+    public IoSession getSession() {
+        return session;
+    }
+
     /**
      * Gets the priority.
      *
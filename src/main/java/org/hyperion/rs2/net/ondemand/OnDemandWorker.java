@@ -1,11 +1,6 @@
 package org.hyperion.rs2.net.ondemand;
 
-import org.hyperion.cache.Cache;
-import org.hyperion.cache.InvalidCacheException;
-
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.concurrent.BlockingQueue;
+import org.hyperion.cache.FileCache;
 
 /**
  * <p>A class which waits for ondemand requests to queue up and then processes
@@ -16,42 +11,33 @@ import java.util.concurrent.BlockingQueue;
 public class OnDemandWorker implements Runnable {
 
     /**
-     * The cache instance.
+     * The shared file cache.
      */
-    private final Cache cache;
+    private final FileCache fileCache;
 
     /**
-     * The array of request queues.
+     * The pool requests are taken from.
      */
-    private final BlockingQueue<OnDemandRequest>[] queues;
+    private final OnDemandPool pool;
 
     /**
      * Creates the ondemand worker.
      *
-     * @param queues The array of request queues.
-     * @throws FileNotFoundException if the cache could not be found.
-     * @throws InvalidCacheException if the cache is invalid.
+     * @param fileCache The shared file cache.
+     * @param pool      The pool requests are taken from.
      */
-    public OnDemandWorker(final BlockingQueue<OnDemandRequest>[] queues) throws FileNotFoundException, InvalidCacheException {
-        this.cache = new Cache(new File("./data/cache/"));
-        this.queues = queues;
+    public OnDemandWorker(final FileCache fileCache, final OnDemandPool pool) {
+        this.fileCache = fileCache;
+        this.pool = pool;
     }
 
     @Override
     public void run() {
-        while (true) {
-            for (final BlockingQueue<OnDemandRequest> activeQueue : queues) {
-                OnDemandRequest request;
-                while ((request = activeQueue.poll()) != null) {
-                    request.service(cache);
-                }
-            }
-            synchronized (OnDemandPool.getOnDemandPool()) {
-                try {
-                    OnDemandPool.getOnDemandPool().wait();
-                } catch (final InterruptedException ignored) {
-                }
+        try {
+            while (true) {
+                pool.take().service(fileCache);
             }
+        } catch (final InterruptedException ignored) {
         }
     }
 
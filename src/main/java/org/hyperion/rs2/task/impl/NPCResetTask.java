@@ -27,6 +27,15 @@ public class NPCResetTask implements Task {
 
     @Override
     public void execute(final GameEngine context) {
+        reset(npc);
+    }
+
+    /**
+     * Resets an NPC after an update cycle.
+     *
+     * @param npc The npc.
+     */
+    public static void reset(final NPC npc) {
         npc.getUpdateFlags().reset();
         npc.setTeleporting(false);
         npc.reset();
@@ -27,6 +27,15 @@ public class NPCTickTask implements Task {
 
     @Override
     public void execute(final GameEngine context) {
+        tick(npc);
+    }
+
+    /**
+     * Performs the pre-update tasks for an NPC.
+     *
+     * @param npc The npc.
+     */
+    public static void tick(final NPC npc) {
         /*
          * If the map region changed set the last known region.
          */
@@ -12,6 +12,7 @@ import org.hyperion.rs2.net.Packet;
 import org.hyperion.rs2.net.PacketBuilder;
 import org.hyperion.rs2.task.Task;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 /**
@@ -21,6 +22,24 @@ import java.util.Iterator;
  */
 public class NPCUpdateTask implements Task {
 
+    /**
+     * The initial size of the buffers holding the local NPCs found around a
+     * player.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    /**
+     * The initial capacity of the NPC update packet, which is large enough
+     * for most updates without the payload having to grow.
+     */
+    private static final int PACKET_CAPACITY = 1024;
+
+    /**
+     * The buffers holding the local NPCs found around a player, one for each
+     * thread which runs updates.
+     */
+    private static final ThreadLocal<NPC[]> localNpcBuffers = ThreadLocal.withInitial(() -> new NPC[INITIAL_BUFFER_SIZE]);
+
     /**
      * The player.
      */
@@ -37,6 +56,15 @@ public class NPCUpdateTask implements Task {
 
     @Override
     public void execute(final GameEngine context) {
+        update(player);
+    }
+
+    /**
+     * Creates and sends the NPC update block for a player.
+     *
+     * @param player The player.
+     */
+    public static void update(final Player player) {
         /*
          * The update block holds the update masks and data, and is written
          * after the main block.
@@ -47,7 +75,7 @@ public class NPCUpdateTask implements Task {
          * The main packet holds information about adding, moving and removing
          * NPCs.
          */
-        final PacketBuilder packet = new PacketBuilder(65, Packet.Type.VARIABLE_SHORT);
+        final PacketBuilder packet = new PacketBuilder(65, Packet.Type.VARIABLE_SHORT, PACKET_CAPACITY);
         packet.startBitAccess();
 
         /*
@@ -96,7 +124,15 @@ public class NPCUpdateTask implements Task {
         /*
          * Loop through all NPCs in the world.
          */
-        for (final NPC npc : World.getWorld().getRegionManager().getLocalNpcs(player)) {
+        NPC[] localNpcs = localNpcBuffers.get();
+        int localNpcCount = World.getWorld().getRegionManager().getLocalNpcs(player, localNpcs);
+        if (localNpcCount > localNpcs.length) {
+            localNpcs = new NPC[localNpcCount];
+            localNpcBuffers.set(localNpcs);
+            World.getWorld().getRegionManager().getLocalNpcs(player, localNpcs);
+        }
+        for (int i = 0; i < localNpcCount; i++) {
+            final NPC npc = localNpcs[i];
             /*
              * Check if there is room left in the local list.
              */
@@ -124,7 +160,7 @@ public class NPCUpdateTask implements Task {
             /*
              * Add the npc in the packet.
              */
-            addNewNPC(packet, npc);
+            addNewNPC(player, packet, npc);
 
             /*
              * Check if an update is required.
@@ -138,6 +174,7 @@ public class NPCUpdateTask implements Task {
 
             }
         }
+        Arrays.fill(localNpcs, 0, localNpcCount, null);
 
         /*
          * Check if the update block isn't empty.
@@ -159,6 +196,7 @@ public class NPCUpdateTask implements Task {
              */
             packet.put(updateBlock.toPacket().getPayload());
         }
+        updateBlock.release();
 
         /*
          * Write the packet.
@@ -172,7 +210,7 @@ public class NPCUpdateTask implements Task {
      * @param packet The main packet.
      * @param npc    The npc.
      */
-    private void updateNPCMovement(final PacketBuilder packet, final NPC npc) {
+    private static void updateNPCMovement(final PacketBuilder packet, final NPC npc) {
         /*
          * Check if the NPC is running.
          */
@@ -251,7 +289,7 @@ public class NPCUpdateTask implements Task {
      * @param packet The update block.
      * @param npc    The npc.
      */
-    private void updateNPC(final PacketBuilder packet, final NPC npc) {
+    private static void updateNPC(final PacketBuilder packet, final NPC npc) {
         /*
          * Calculate the mask.
          */
@@ -327,10 +365,11 @@ public class NPCUpdateTask implements Task {
     /**
      * Adds a new NPC.
      *
+     * @param player The player being updated.
      * @param packet The main packet.
      * @param npc    The npc to add.
      */
-    private void addNewNPC(final PacketBuilder packet, final NPC npc) {
+    private static void addNewNPC(final Player player, final PacketBuilder packet, final NPC npc) {
         /*
          * Write the NPC's index.
          */
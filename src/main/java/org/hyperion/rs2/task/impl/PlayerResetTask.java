@@ -27,6 +27,15 @@ public class PlayerResetTask implements Task {
 
     @Override
     public void execute(final GameEngine context) {
+        reset(player);
+    }
+
+    /**
+     * Resets a player after an update cycle.
+     *
+     * @param player The player.
+     */
+    public static void reset(final Player player) {
         player.getUpdateFlags().reset();
         player.setTeleporting(false);
         player.setMapRegionChanging(false);
@@ -33,6 +33,15 @@ public class PlayerTickTask implements Task {
 
     @Override
     public void execute(final GameEngine context) {
+        tick(player);
+    }
+
+    /**
+     * Performs the pre-update tasks for a player.
+     *
+     * @param player The player.
+     */
+    public static void tick(final Player player) {
         final Queue<ChatMessage> messages = player.getChatMessageQueue();
         if (messages.size() > 0) {
             player.getUpdateFlags().flag(UpdateFlag.CHAT);
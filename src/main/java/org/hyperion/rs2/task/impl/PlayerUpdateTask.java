@@ -7,6 +7,7 @@ import org.hyperion.rs2.model.Entity;
 import org.hyperion.rs2.model.Item;
 import org.hyperion.rs2.model.Location;
 import org.hyperion.rs2.model.Player;
+import org.hyperion.rs2.model.Player.UpdateBlockType;
 import org.hyperion.rs2.model.UpdateFlags;
 import org.hyperion.rs2.model.UpdateFlags.UpdateFlag;
 import org.hyperion.rs2.model.World;
@@ -17,6 +18,7 @@ import org.hyperion.rs2.net.Packet;
 import org.hyperion.rs2.net.PacketBuilder;
 import org.hyperion.rs2.task.Task;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 /**
@@ -26,6 +28,24 @@ import java.util.Iterator;
  */
 public class PlayerUpdateTask implements Task {
 
+    /**
+     * The initial size of the buffers holding the local players found around a
+     * player.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    /**
+     * The initial capacity of the player update packet, which is large enough
+     * for most updates without the payload having to grow.
+     */
+    private static final int PACKET_CAPACITY = 1024;
+
+    /**
+     * The buffers holding the local players found around a player, one for each
+     * thread which runs updates.
+     */
+    private static final ThreadLocal<Player[]> localPlayerBuffers = ThreadLocal.withInitial(() -> new Player[INITIAL_BUFFER_SIZE]);
+
     /**
      * The player.
      */
@@ -42,6 +62,15 @@ public class PlayerUpdateTask implements Task {
 
     @Override
     public void execute(final GameEngine context) {
+        update(player);
+    }
+
+    /**
+     * Creates and sends the player update block for a player.
+     *
+     * @param player The player.
+     */
+    public static void update(final Player player) {
         /*
          * If the map region changed send the new one.
          * We do this immediately as the client can begin loading it before the
@@ -62,14 +91,14 @@ public class PlayerUpdateTask implements Task {
          * information about the local list, players to add and remove,
          * movement and which updates are required.
          */
-        final PacketBuilder packet = new PacketBuilder(81, Packet.Type.VARIABLE_SHORT);
+        final PacketBuilder packet = new PacketBuilder(81, Packet.Type.VARIABLE_SHORT, PACKET_CAPACITY);
         packet.startBitAccess();
 
         /*
          * Updates this player.
          */
-        updateThisPlayerMovement(packet);
-        updatePlayer(updateBlock, player, false, true);
+        updateThisPlayerMovement(player, packet);
+        updatePlayer(player, updateBlock, player, false, true);
 
         /*
          * Write the current size of the player list.
@@ -98,7 +127,7 @@ public class PlayerUpdateTask implements Task {
                  * Check if an update is required, and if so, send the update.
                  */
                 if (otherPlayer.getUpdateFlags().isUpdateRequired()) {
-                    updatePlayer(updateBlock, otherPlayer, false, false);
+                    updatePlayer(player, updateBlock, otherPlayer, false, false);
                 }
             } else {
                 /*
@@ -117,7 +146,15 @@ public class PlayerUpdateTask implements Task {
         /*
          * Loop through every player.
          */
-        for (final Player otherPlayer : World.getWorld().getRegionManager().getLocalPlayers(player)) {
+        Player[] localPlayers = localPlayerBuffers.get();
+        int localPlayerCount = World.getWorld().getRegionManager().getLocalPlayers(player, localPlayers);
+        if (localPlayerCount > localPlayers.length) {
+            localPlayers = new Player[localPlayerCount];
+            localPlayerBuffers.set(localPlayers);
+            World.getWorld().getRegionManager().getLocalPlayers(player, localPlayers);
+        }
+        for (int i = 0; i < localPlayerCount; i++) {
+            final Player otherPlayer = localPlayers[i];
             /*
              * Check if there is room left in the local list.
              */
@@ -145,13 +182,14 @@ public class PlayerUpdateTask implements Task {
             /*
              * Add the player in the packet.
              */
-            addNewPlayer(packet, otherPlayer);
+            addNewPlayer(player, packet, otherPlayer);
 
             /*
              * Update the player, forcing the appearance flag.
              */
-            updatePlayer(updateBlock, otherPlayer, true, false);
+            updatePlayer(player, updateBlock, otherPlayer, true, false);
         }
+        Arrays.fill(localPlayers, 0, localPlayerCount, null);
 
         /*
          * Check if the update block is not empty.
@@ -173,6 +211,7 @@ public class PlayerUpdateTask implements Task {
              */
             packet.put(updateBlock.toPacket().getPayload());
         }
+        updateBlock.release();
 
         /*
          * Write the packet.
@@ -183,9 +222,10 @@ public class PlayerUpdateTask implements Task {
     /**
      * Updates this player's movement.
      *
+     * @param player The player.
      * @param packet The packet.
      */
-    private void updateThisPlayerMovement(final PacketBuilder packet) {
+    private static void updateThisPlayerMovement(final Player player, final PacketBuilder packet) {
         /*
          * Check if the player is teleporting.
          */
@@ -296,12 +336,13 @@ public class PlayerUpdateTask implements Task {
     /**
      * Updates a player.
      *
+     * @param player          The player being updated.
      * @param packet          The packet.
      * @param otherPlayer     The other player.
      * @param forceAppearance The force appearance flag.
      * @param noChat          Indicates chat should not be relayed to this player.
      */
-    public void updatePlayer(final PacketBuilder packet, final Player otherPlayer, final boolean forceAppearance, final boolean noChat) {
+    public static void updatePlayer(final Player player, final PacketBuilder packet, final Player otherPlayer, final boolean forceAppearance, final boolean noChat) {
         /*
          * If no update is required and we don't have to force an appearance
          * update, don't write anything.
@@ -311,127 +352,162 @@ public class PlayerUpdateTask implements Task {
         }
 
         /*
-         * We can used the cached update block!
+         * Use the block prepared before the update phase if there is one.
+         * The blocks are not changed during the update phase, so no lock is
+         * needed to read them.
          */
-        synchronized (otherPlayer) {
-            if (otherPlayer.hasCachedUpdateBlock() && otherPlayer != player && !forceAppearance && !noChat) {
-                packet.put(otherPlayer.getCachedUpdateBlock().getPayload().flip());
+        if (!forceAppearance || !noChat) {
+            final UpdateBlockType type = forceAppearance ? UpdateBlockType.FORCED_APPEARANCE : noChat ? UpdateBlockType.NO_CHAT : UpdateBlockType.NORMAL;
+            byte[] block = otherPlayer.getCachedUpdateBlock(type);
+            if (block == null && type == UpdateBlockType.FORCED_APPEARANCE) {
+                /*
+                 * The forced appearance block is only needed by players who
+                 * have just seen this player, so it is built by the first of
+                 * them and shared with the rest.
+                 */
+                block = otherPlayer.setCachedUpdateBlockIfAbsent(type, buildUpdateBlock(otherPlayer, true, false));
+            }
+            if (block != null) {
+                packet.put(block);
                 return;
             }
+        }
 
-            /*
-             * We have to construct and cache our own block.
-             */
-            final PacketBuilder block = new PacketBuilder();
-
-            /*
-             * Calculate the bitmask.
-             */
-            int mask = 0;
-            final UpdateFlags flags = otherPlayer.getUpdateFlags();
+        /*
+         * Otherwise, construct the block.
+         */
+        packet.put(buildUpdateBlock(otherPlayer, forceAppearance, noChat));
+    }
 
-            // TODO mask 0x400
-            if (flags.get(UpdateFlag.GRAPHICS)) {
-                mask |= 0x100;
-            }
-            if (flags.get(UpdateFlag.ANIMATION)) {
-                mask |= 0x8;
-            }
-            if (flags.get(UpdateFlag.FORCED_CHAT)) {
-                mask |= 0x4;
-            }
-            if (flags.get(UpdateFlag.CHAT) && !noChat) {
-                mask |= 0x80;
-            }
-            if (flags.get(UpdateFlag.FACE_ENTITY)) {
-                mask |= 0x1;
-            }
-            if (flags.get(UpdateFlag.APPEARANCE) || forceAppearance) {
-                mask |= 0x10;
-            }
-            if (flags.get(UpdateFlag.FACE_COORDINATE)) {
-                mask |= 0x2;
-            }
-            if (flags.get(UpdateFlag.HIT)) {
-                mask |= 0x20;
-            }
-            if (flags.get(UpdateFlag.HIT_2)) {
-                mask |= 0x200;
-            }
+    /**
+     * Builds the update blocks for a player before the update phase, so
+     * they can be shared by every player who can see it. The forced
+     * appearance block is built during the update phase instead, and only if
+     * a player adds this player to their local list.
+     *
+     * @param player The player.
+     */
+    public static void prepare(final Player player) {
+        if (player.getUpdateFlags().isUpdateRequired()) {
+            final byte[] block = buildUpdateBlock(player, false, false);
+            player.setCachedUpdateBlock(UpdateBlockType.NORMAL, block);
 
             /*
-             * Check if the bitmask would overflow a byte.
+             * The block without chat only differs if there is chat.
              */
-            if (mask >= 0x100) {
-                /*
-                 * Write it as a short and indicate we have done so.
-                 */
-                mask |= 0x40;
-                block.put((byte) (mask & 0xFF));
-                block.put((byte) (mask >> 8));
+            if (player.getUpdateFlags().get(UpdateFlag.CHAT)) {
+                player.setCachedUpdateBlock(UpdateBlockType.NO_CHAT, buildUpdateBlock(player, false, true));
             } else {
-                /*
-                 * Write it as a byte.
-                 */
-                block.put((byte) (mask));
+                player.setCachedUpdateBlock(UpdateBlockType.NO_CHAT, block);
             }
+        }
+    }
 
-            /*
-             * Append the appropriate updates.
-             */
-            if (flags.get(UpdateFlag.GRAPHICS)) {
-                appendGraphicsUpdate(block, otherPlayer);
-            }
-            if (flags.get(UpdateFlag.ANIMATION)) {
-                appendAnimationUpdate(block, otherPlayer);
-            }
-            if (flags.get(UpdateFlag.FORCED_CHAT)) {
+    /**
+     * Builds a player's update block.
+     *
+     * @param otherPlayer     The player.
+     * @param forceAppearance The force appearance flag.
+     * @param noChat          Indicates chat should not be included.
+     * @return The update block.
+     */
+    private static byte[] buildUpdateBlock(final Player otherPlayer, final boolean forceAppearance, final boolean noChat) {
+        final PacketBuilder block = new PacketBuilder();
 
-            }
-            if (flags.get(UpdateFlag.CHAT) && !noChat) {
-                appendChatUpdate(block, otherPlayer);
-            }
-            if (flags.get(UpdateFlag.FACE_ENTITY)) {
-                final Entity entity = otherPlayer.getInteractingEntity();
-                block.putLEShort(entity == null ? -1 : entity.getClientIndex());
-            }
-            if (flags.get(UpdateFlag.APPEARANCE) || forceAppearance) {
-                appendPlayerAppearanceUpdate(block, otherPlayer);
-            }
-            if (flags.get(UpdateFlag.FACE_COORDINATE)) {
-                final Location loc = otherPlayer.getFaceLocation();
-                if (loc == null) {
-                    block.putLEShortA(0);
-                    block.putLEShort(0);
-                } else {
-                    block.putLEShortA(loc.getX() * 2 + 1);
-                    block.putLEShort(loc.getY() * 2 + 1);
-                }
-            }
-            if (flags.get(UpdateFlag.HIT)) {
-                appendHitUpdate(otherPlayer, block);
-            }
-            if (flags.get(UpdateFlag.HIT_2)) {
-                appendHit2Update(otherPlayer, block);
-            }
+        /*
+         * Calculate the bitmask.
+         */
+        int mask = 0;
+        final UpdateFlags flags = otherPlayer.getUpdateFlags();
 
-            /*
-             * Convert the block builder to a packet.
-             */
-            final Packet blockPacket = block.toPacket();
+        // TODO mask 0x400
+        if (flags.get(UpdateFlag.GRAPHICS)) {
+            mask |= 0x100;
+        }
+        if (flags.get(UpdateFlag.ANIMATION)) {
+            mask |= 0x8;
+        }
+        if (flags.get(UpdateFlag.FORCED_CHAT)) {
+            mask |= 0x4;
+        }
+        if (flags.get(UpdateFlag.CHAT) && !noChat) {
+            mask |= 0x80;
+        }
+        if (flags.get(UpdateFlag.FACE_ENTITY)) {
+            mask |= 0x1;
+        }
+        if (flags.get(UpdateFlag.APPEARANCE) || forceAppearance) {
+            mask |= 0x10;
+        }
+        if (flags.get(UpdateFlag.FACE_COORDINATE)) {
+            mask |= 0x2;
+        }
+        if (flags.get(UpdateFlag.HIT)) {
+            mask |= 0x20;
+        }
+        if (flags.get(UpdateFlag.HIT_2)) {
+            mask |= 0x200;
+        }
 
+        /*
+         * Check if the bitmask would overflow a byte.
+         */
+        if (mask >= 0x100) {
             /*
-             * Now it is over, cache the block if we can.
+             * Write it as a short and indicate we have done so.
              */
-            if (otherPlayer != player && !forceAppearance && !noChat) {
-                otherPlayer.setCachedUpdateBlock(blockPacket);
-            }
-
+            mask |= 0x40;
+            block.put((byte) (mask & 0xFF));
+            block.put((byte) (mask >> 8));
+        } else {
             /*
-             * And finally append the block at the end.
+             * Write it as a byte.
              */
-            packet.put(blockPacket.getPayload());
+            block.put((byte) (mask));
+        }
+
+        /*
+         * Append the appropriate updates.
+         */
+        if (flags.get(UpdateFlag.GRAPHICS)) {
+            appendGraphicsUpdate(block, otherPlayer);
+        }
+        if (flags.get(UpdateFlag.ANIMATION)) {
+            appendAnimationUpdate(block, otherPlayer);
+        }
+        if (flags.get(UpdateFlag.FORCED_CHAT)) {
+
+        }
+        if (flags.get(UpdateFlag.CHAT) && !noChat) {
+            appendChatUpdate(block, otherPlayer);
+        }
+        if (flags.get(UpdateFlag.FACE_ENTITY)) {
+            final Entity entity = otherPlayer.getInteractingEntity();
+            block.putLEShort(entity == null ? -1 : entity.getClientIndex());
+        }
+        if (flags.get(UpdateFlag.APPEARANCE) || forceAppearance) {
+            appendPlayerAppearanceUpdate(block, otherPlayer);
+        }
+        if (flags.get(UpdateFlag.FACE_COORDINATE)) {
+            final Location loc = otherPlayer.getFaceLocation();
+            if (loc == null) {
+                block.putLEShortA(0);
+                block.putLEShort(0);
+            } else {
+                block.putLEShortA(loc.getX() * 2 + 1);
+                block.putLEShort(loc.getY() * 2 + 1);
+            }
+        }
+        if (flags.get(UpdateFlag.HIT)) {
+            appendHitUpdate(otherPlayer, block);
         }
+        if (flags.get(UpdateFlag.HIT_2)) {
+            appendHit2Update(otherPlayer, block);
+        }
+
+        final byte[] bytes = block.toByteArray();
+        block.release();
+        return bytes;
     }
 
     /**
@@ -440,7 +516,7 @@ public class PlayerUpdateTask implements Task {
      * @param packet      The packet.
      * @param otherPlayer The player.
      */
-    public void updatePlayerMovement(final PacketBuilder packet, final Player otherPlayer) {
+    public static void updatePlayerMovement(final PacketBuilder packet, final Player otherPlayer) {
         /*
          * Check which type of movement took place.
          */
@@ -516,10 +592,11 @@ public class PlayerUpdateTask implements Task {
     /**
      * Adds a new player.
      *
+     * @param player      The player being updated.
      * @param packet      The packet.
      * @param otherPlayer The player.
      */
-    public void addNewPlayer(final PacketBuilder packet, final Player otherPlayer) {
+    public static void addNewPlayer(final Player player, final PacketBuilder packet, final Player otherPlayer) {
         /*
          * Write the player index.
          */
@@ -553,7 +630,7 @@ public class PlayerUpdateTask implements Task {
      * @param block       The update block.
      * @param otherPlayer The player.
      */
-    private void appendGraphicsUpdate(final PacketBuilder block, final Player otherPlayer) {
+    private static void appendGraphicsUpdate(final PacketBuilder block, final Player otherPlayer) {
         block.putLEShort(otherPlayer.getCurrentGraphic().getId());
         block.putInt(otherPlayer.getCurrentGraphic().getDelay());
     }
@@ -564,7 +641,7 @@ public class PlayerUpdateTask implements Task {
      * @param block       The update block.
      * @param otherPlayer The player.
      */
-    private void appendAnimationUpdate(final PacketBuilder block, final Player otherPlayer) {
+    private static void appendAnimationUpdate(final PacketBuilder block, final Player otherPlayer) {
         block.putLEShort(otherPlayer.getCurrentAnimation().getId());
         block.putByteC(otherPlayer.getCurrentAnimation().getDelay());
     }
@@ -575,7 +652,7 @@ public class PlayerUpdateTask implements Task {
      * @param packet      The packet.
      * @param otherPlayer The player.
      */
-    private void appendChatUpdate(final PacketBuilder packet, final Player otherPlayer) {
+    private static void appendChatUpdate(final PacketBuilder packet, final Player otherPlayer) {
         final ChatMessage cm = otherPlayer.getCurrentChatMessage();
 
         final byte[] bytes = cm.getText();
@@ -589,12 +666,31 @@ public class PlayerUpdateTask implements Task {
     }
 
     /**
-     * Appends an appearance update.
+     * Appends an appearance update. The appearance block is only built again
+     * if the player's appearance, equipment or combat level has changed since
+     * it was last built.
      *
      * @param packet      The packet.
      * @param otherPlayer The player.
      */
-    private void appendPlayerAppearanceUpdate(final PacketBuilder packet, final Player otherPlayer) {
+    private static void appendPlayerAppearanceUpdate(final PacketBuilder packet, final Player otherPlayer) {
+        byte[] block = otherPlayer.getCachedAppearanceBlock();
+        if (block == null) {
+            block = buildAppearanceBlock(otherPlayer);
+            otherPlayer.setCachedAppearanceBlock(block);
+        }
+
+        packet.putByteC(block.length);
+        packet.put(block);
+    }
+
+    /**
+     * Builds an appearance block.
+     *
+     * @param otherPlayer The player.
+     * @return The appearance block.
+     */
+    private static byte[] buildAppearanceBlock(final Player otherPlayer) {
         final Appearance app = otherPlayer.getAppearance();
         final Container eq = otherPlayer.getEquipment();
 
@@ -678,10 +774,9 @@ public class PlayerUpdateTask implements Task {
         playerProps.put((byte) otherPlayer.getSkills().getCombatLevel()); // combat level
         playerProps.putShort(0); // (skill-level instead of combat-level) otherPlayer.getSkills().getTotalLevel()); // total level
 
-        final Packet propsPacket = playerProps.toPacket();
-
-        packet.putByteC(propsPacket.getLength());
-        packet.put(propsPacket.getPayload());
+        final byte[] bytes = playerProps.toByteArray();
+        playerProps.release();
+        return bytes;
     }
 
     private static void appendHitUpdate(final Player p, final PacketBuilder updateBlock) {
@@ -17,18 +17,29 @@ public class SessionLoginTask implements Task {
      */
     private final Player player;
 
+    /**
+     * The time the login started, in nanoseconds.
+     */
+    private final long loginStart;
+
     /**
      * Creates the session login task.
      *
-     * @param player The player that logged in.
+     * @param player     The player that logged in.
+     * @param loginStart The time the login started, in nanoseconds.
      */
-    public SessionLoginTask(final Player player) {
+    public SessionLoginTask(final Player player, final long loginStart) {
         this.player = player;
+        this.loginStart = loginStart;
     }
 
     @Override
     public void execute(final GameEngine context) {
-        World.getWorld().register(player);
+        final World world = World.getWorld();
+        world.register(player);
+        if (world.getPlayers().contains(player)) {
+            world.getLoginStatistics().record(System.nanoTime() - loginStart);
+        }
     }
 
 }
@@ -36,7 +36,11 @@ public class SessionMessageTask implements Task {
 
     @Override
     public void execute(final GameEngine context) {
-        PacketManager.getPacketManager().handle(session, message);
+        try {
+            PacketManager.getPacketManager().handle(session, message);
+        } finally {
+            message.release();
+        }
     }
 
 }
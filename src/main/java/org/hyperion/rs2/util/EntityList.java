@@ -8,6 +8,12 @@ import java.util.Iterator;
 
 /**
  * A class which represents a list of entities.
+ * <p>
+ * Entities are stored at their index, which is also recorded on the entity
+ * itself, so finding and removing an entity takes constant time. Free indices
+ * are kept on a stack so adding an entity also takes constant time. A dense
+ * array holds the entities without any holes, which can be walked by
+ * position with {@link #getAt(int)}.
  *
  * @param <E> The type of entity.
  * @author Graham Edgecombe
@@ -15,10 +21,31 @@ import java.util.Iterator;
 public class EntityList<E extends Entity> implements Collection<E>, Iterable<E> {
 
     /**
-     * Internal entities array.
+     * Internal entities array, indexed by entity index.
      */
     private final Entity[] entities;
 
+    /**
+     * The entities without holes, in iteration order.
+     */
+    private final Entity[] dense;
+
+    /**
+     * The position of each entity in the dense array, indexed by entity
+     * index.
+     */
+    private final int[] densePositions;
+
+    /**
+     * The stack of free indices.
+     */
+    private final int[] freeIndices;
+
+    /**
+     * The number of free indices on the stack.
+     */
+    private int freeCount;
+
     /**
      * Current size.
      */
@@ -31,6 +58,30 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
      */
     public EntityList(final int capacity) {
         entities = new Entity[capacity + 1]; // do not use idx 0
+        dense = new Entity[capacity];
+        densePositions = new int[capacity + 1];
+        freeIndices = new int[capacity];
+        resetFreeIndices();
+    }
+
+    /**
+     * Fills the free index stack so that the lowest index is used first.
+     */
+    private void resetFreeIndices() {
+        freeCount = freeIndices.length;
+        for (int i = 0; i < freeCount; i++) {
+            freeIndices[i] = freeCount - i;
+        }
+    }
+
+    /**
+     * Gets the capacity of this list. Valid indices range from 1 to the
+     * capacity inclusive.
+     *
+     * @return The capacity.
+     */
+    public int capacity() {
+        return entities.length - 1;
     }
 
     /**
@@ -48,38 +99,42 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
     }
 
     /**
-     * Gets the index of an entity.
+     * Gets the entity at a position in iteration order. Positions range from
+     * 0 to <code>size() - 1</code>. When an entity is removed, the last
+     * entity is moved into its position.
      *
-     * @param entity The entity.
-     * @return The index in the list.
+     * @param position The position.
+     * @return The entity.
+     * @throws IndexOutOfBoundsException if the position is out of bounds.
      */
-    public int indexOf(final Entity entity) {
-        return entity.getIndex();
+    @SuppressWarnings("unchecked")
+    public E getAt(final int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return (E) dense[position];
     }
 
     /**
-     * Gets the next free id.
+     * Gets the index of an entity.
      *
-     * @return The next free id.
+     * @param entity The entity.
+     * @return The index in the list.
      */
-    private int getNextId() {
-        for (int i = 1; i < entities.length; i++) {
-            if (entities[i] == null) {
-                return i;
-            }
-        }
-        return -1;
+    public int indexOf(final Entity entity) {
+        return entity.getIndex();
     }
 
     @Override
     public boolean add(final E arg0) {
-        final int id = getNextId();
-        if (id == -1) {
+        if (freeCount == 0 || contains(arg0)) {
             return false;
         }
+        final int id = freeIndices[--freeCount];
         entities[id] = arg0;
+        densePositions[id] = size;
+        dense[size++] = arg0;
         arg0.setIndex(id);
-        size++;
         return true;
     }
 
@@ -96,20 +151,19 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
 
     @Override
     public void clear() {
-        for (int i = 1; i < entities.length; i++) {
-            entities[i] = null;
-        }
+        Arrays.fill(entities, null);
+        Arrays.fill(dense, 0, size, null);
+        resetFreeIndices();
         size = 0;
     }
 
     @Override
     public boolean contains(final Object arg0) {
-        for (int i = 1; i < entities.length; i++) {
-            if (entities[i] == arg0) {
-                return true;
-            }
+        if (!(arg0 instanceof Entity)) {
+            return false;
         }
-        return false;
+        final int index = ((Entity) arg0).getIndex();
+        return index > 0 && index < entities.length && entities[index] == arg0;
     }
 
     @Override
@@ -136,14 +190,23 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
 
     @Override
     public boolean remove(final Object arg0) {
-        for (int i = 1; i < entities.length; i++) {
-            if (entities[i] == arg0) {
-                entities[i] = null;
-                size--;
-                return true;
-            }
+        if (!contains(arg0)) {
+            return false;
         }
-        return false;
+        final int index = ((Entity) arg0).getIndex();
+        entities[index] = null;
+        freeIndices[freeCount++] = index;
+
+        /*
+         * Move the last entity into the removed entity's position so the
+         * dense array has no holes.
+         */
+        final int position = densePositions[index];
+        final Entity last = dense[--size];
+        dense[position] = last;
+        densePositions[last.getIndex()] = position;
+        dense[size] = null;
+        return true;
     }
 
     @Override
@@ -160,13 +223,10 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
     @Override
     public boolean retainAll(final Collection<?> arg0) {
         boolean changed = false;
-        for (int i = 1; i < entities.length; i++) {
-            if (entities[i] != null) {
-                if (!arg0.contains(entities[i])) {
-                    entities[i] = null;
-                    size--;
-                    changed = true;
-                }
+        for (int i = size - 1; i >= 0; i--) {
+            if (!arg0.contains(dense[i])) {
+                remove(dense[i]);
+                changed = true;
             }
         }
         return changed;
@@ -177,17 +237,30 @@ public class EntityList<E extends Entity> implements Collection<E>, Iterable<E>
         return size;
     }
 
-    @Override
-    public Entity[] toArray() {
-        final int size = size();
-        final Entity[] array = new Entity[size];
-        int ptr = 0;
-        for (int i = 1; i < entities.length; i++) {
+    /**
+     * Copies the entities in index order, the order in which they are
+     * iterated.
+     *
+     * @return The entities.
+     */
+    Entity[] toIndexOrderArray() {
+        final Entity[] copy = new Entity[size];
+        int count = 0;
+        /*
+         * Stop once every entity is found, as the highest indices are usually
+         * free.
+         */
+        for (int i = 1; count < size; i++) {
             if (entities[i] != null) {
-                array[ptr++] = entities[i];
+                copy[count++] = entities[i];
             }
         }
-        return array;
+        return copy;
+    }
+
+    @Override
+    public Entity[] toArray() {
+        return Arrays.copyOf(dense, size);
     }
 
     @SuppressWarnings("unchecked")
@@ -7,6 +7,10 @@ import java.util.NoSuchElementException;
 
 /**
  * An implementation of an iterator for an entity list.
+ * <p>
+ * The iterator walks a copy of the entities, in index order, taken when it is
+ * created. Entities removed from the list while iterating are still
+ * returned, and entities added are not.
  *
  * @param <E> The type of entity.
  * @author Graham Edgecombe
@@ -22,14 +26,12 @@ public class EntityListIterator<E extends Entity> implements Iterator<E> {
      * The entity list.
      */
     private final EntityList<E> entityList;
-    /**
-     * The size of the list.
-     */
-    private final int size;
+
     /**
      * The previous index.
      */
     private int lastIndex = -1;
+
     /**
      * The current index.
      */
@@ -42,13 +44,12 @@ public class EntityListIterator<E extends Entity> implements Iterator<E> {
      */
     public EntityListIterator(final EntityList<E> entityList) {
         this.entityList = entityList;
-        entities = entityList.toArray(new Entity[0]);
-        size = entities.length;
+        entities = entityList.toIndexOrderArray();
     }
 
     @Override
     public boolean hasNext() {
-        return cursor < size;
+        return cursor < entities.length;
     }
 
     @SuppressWarnings("unchecked")
@@ -67,6 +68,7 @@ public class EntityListIterator<E extends Entity> implements Iterator<E> {
             throw new IllegalStateException();
         }
         entityList.remove(entities[lastIndex]);
+        lastIndex = -1;
     }
 
 }
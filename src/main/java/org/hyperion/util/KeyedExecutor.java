@@ -0,0 +1,189 @@
+package org.hyperion.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * An <code>Executor</code> which runs tasks with the same key one after
+ * another, in the order they were submitted, while tasks with different keys
+ * may run at the same time in the backing executor.
+ * <p>
+ * A task may have several keys, in which case it runs after every task
+ * submitted earlier with any of its keys, and holds back later tasks with any
+ * of them. Tasks only ever wait for tasks submitted before them, so they
+ * cannot wait for each other.
+ * <p>
+ * A task is only handed to the backing executor once it is first in line for
+ * all of its keys. When it finishes, the next task of each key moves up, and
+ * once a key has no more tasks it is forgotten.
+ * <p>
+ * If the backing executor rejects a task, the task is dropped and the tasks
+ * behind it move up as if it had finished, so no key is held forever.
+ */
+public class KeyedExecutor {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger logger = Logger.getLogger(KeyedExecutor.class.getName());
+
+    /**
+     * The executor backing this executor.
+     */
+    private final Executor executor;
+
+    /**
+     * The tasks waiting behind the first task of each key, by key. A key is
+     * present while it has a task which is running or waiting for its other
+     * keys.
+     */
+    private final Map<Object, Queue<Job>> pending = new HashMap<>();
+
+    /**
+     * Creates the keyed executor.
+     *
+     * @param executor The executor backing this executor.
+     */
+    public KeyedExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Executes a task after every task submitted earlier with the same key
+     * has finished.
+     *
+     * @param key  The key.
+     * @param task The task.
+     */
+    public void execute(final Object key, final Runnable task) {
+        execute(Collections.singleton(key), task);
+    }
+
+    /**
+     * Executes a task after every task submitted earlier with any of the
+     * same keys has finished.
+     *
+     * @param keys The keys.
+     * @param task The task.
+     * @throws RejectedExecutionException if the task is first in line for
+     *                                    all of its keys and the backing
+     *                                    executor rejects it.
+     */
+    public void execute(final Collection<?> keys, final Runnable task) {
+        final Job job = new Job(new LinkedHashSet<>(keys), task);
+        synchronized (pending) {
+            for (final Object key : job.keys) {
+                final Queue<Job> queue = pending.get(key);
+                if (queue == null) {
+                    pending.put(key, new ArrayDeque<>());
+                    job.waiting--;
+                } else {
+                    queue.add(job);
+                }
+            }
+            if (job.waiting != 0) {
+                return;
+            }
+        }
+        try {
+            executor.execute(() -> run(job));
+        } catch (final RejectedExecutionException ex) {
+            release(job);
+            throw ex;
+        }
+    }
+
+    /**
+     * Runs a job, then releases its keys.
+     *
+     * @param job The job.
+     */
+    private void run(final Job job) {
+        try {
+            job.task.run();
+        } finally {
+            release(job);
+        }
+    }
+
+    /**
+     * Releases the keys of a job which has finished or been rejected, and
+     * hands the jobs which are now first in line for all of their keys to the
+     * backing executor. Jobs which it rejects are dropped, and their keys are
+     * released in turn.
+     *
+     * @param job The job.
+     */
+    private void release(final Job job) {
+        final Queue<Job> released = new ArrayDeque<>();
+        released.add(job);
+        Job current;
+        while ((current = released.poll()) != null) {
+            final List<Job> ready = new ArrayList<>();
+            synchronized (pending) {
+                for (final Object key : current.keys) {
+                    final Job next = pending.get(key).poll();
+                    if (next == null) {
+                        pending.remove(key);
+                    } else if (--next.waiting == 0) {
+                        ready.add(next);
+                    }
+                }
+            }
+            for (final Job next : ready) {
+                try {
+                    executor.execute(() -> run(next));
+                } catch (final RejectedExecutionException ex) {
+                    logger.warning("Dropped a task rejected by the backing executor, keys : " + next.keys);
+                    released.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * A task and its keys.
+     */
+    private static final class Job {
+
+        /**
+         * The keys.
+         */
+        private final Collection<Object> keys;
+
+        /**
+         * The task.
+         */
+        private final Runnable task;
+
+        /**
+         * The number of keys for which the job is not yet first in line.
+         * Guarded by the lock on the pending map.
+         */
+        private int waiting;
+
+        /**
+         * Creates the job.
+         *
+         * @param keys The keys.
+         * @param task The task.
+         */
+        private Job(final Collection<Object> keys, final Runnable task) {
+            this.keys = keys;
+            this.task = task;
+            this.waiting = keys.size();
+        }
+
+    }
+
+}
@@ -17,6 +17,16 @@ public class LoginDecoder extends CumulativeProtocolDecoder {
      */
     private int opcode = -1;
 
+    /**
+     * The current request id.
+     */
+    private int requestId;
+
+    /**
+     * A flag indicating the current request id has been read.
+     */
+    private boolean hasRequestId = false;
+
     /**
      * The current length.
      */
@@ -31,6 +41,14 @@ public class LoginDecoder extends CumulativeProtocolDecoder {
                 return false;
             }
         }
+        if (!hasRequestId) {
+            if (in.remaining() >= 4) {
+                requestId = in.getInt();
+                hasRequestId = true;
+            } else {
+                return false;
+            }
+        }
         if (length == -1) {
             if (in.remaining() >= 2) {
                 length = in.getUnsignedShort();
@@ -44,8 +62,9 @@ public class LoginDecoder extends CumulativeProtocolDecoder {
             final IoBuffer buf = IoBuffer.allocate(length);
             buf.put(payload);
             buf.flip();
-            out.write(new LoginPacket(opcode, buf));
+            out.write(new LoginPacket(opcode, requestId, buf));
             opcode = -1;
+            hasRequestId = false;
             length = -1;
             return true;
         } else {
@@ -15,8 +15,16 @@ public class LoginEncoder implements ProtocolEncoder {
     @Override
     public void encode(final IoSession session, final Object in, final ProtocolEncoderOutput out) throws Exception {
         final LoginPacket packet = (LoginPacket) in;
-        final IoBuffer buf = IoBuffer.allocate(1 + 2 + packet.getPayload().remaining());
+        if (packet.getPayload().remaining() > LoginPacket.MAX_PAYLOAD) {
+            /*
+             * The length is written as a short, so a larger payload would be
+             * truncated and corrupt the stream.
+             */
+            throw new IllegalArgumentException("Payload too large : " + packet.getPayload().remaining() + " bytes.");
+        }
+        final IoBuffer buf = IoBuffer.allocate(LoginPacket.HEADER_SIZE + packet.getPayload().remaining());
         buf.put((byte) packet.getOpcode());
+        buf.putInt(packet.getRequestId());
         buf.putShort((short) packet.getPayload().remaining());
         buf.put(packet.getPayload());
         buf.flip();
@@ -4,6 +4,12 @@ import org.apache.mina.core.buffer.IoBuffer;
 
 /**
  * Represents a packet between the login server and world server.
+ * <p>
+ * Each packet carries a request id. The world server gives every request a
+ * unique id, and the login server copies it into the response, so many
+ * requests can be in flight on one session and responses are matched to
+ * requests regardless of the player they are for. Packets which are not part
+ * of a request, such as authentication, have the id <code>0</code>.
  *
  * @author Graham Edgecombe
  */
@@ -54,11 +60,36 @@ public class LoginPacket {
      */
     public static final int DISCONNECT = 4;
 
+    /**
+     * Batched save request opcode.
+     */
+    public static final int SAVE_BATCH = 5;
+
+    /**
+     * Batched save response opcode.
+     */
+    public static final int SAVE_BATCH_RESPONSE = 5;
+
+    /**
+     * The maximum length of a payload.
+     */
+    public static final int MAX_PAYLOAD = 65535;
+
+    /**
+     * The size of the header: the opcode, request id and length.
+     */
+    public static final int HEADER_SIZE = 1 + 4 + 2;
+
     /**
      * The opcode.
      */
     private final int opcode;
 
+    /**
+     * The request id.
+     */
+    private final int requestId;
+
     /**
      * The length.
      */
@@ -76,7 +107,19 @@ public class LoginPacket {
      * @param payload The payload.
      */
     public LoginPacket(final int opcode, final IoBuffer payload) {
+        this(opcode, 0, payload);
+    }
+
+    /**
+     * Creates the login packet.
+     *
+     * @param opcode    The opcode.
+     * @param requestId The request id.
+     * @param payload   The payload.
+     */
+    public LoginPacket(final int opcode, final int requestId, final IoBuffer payload) {
         this.opcode = opcode;
+        this.requestId = requestId;
         this.length = payload.remaining();
         this.payload = payload;
     }
@@ -90,6 +133,15 @@ public class LoginPacket {
         return opcode;
     }
 
+    /**
+     * Gets the request id.
+     *
+     * @return The request id.
+     */
+    public int getRequestId() {
+        return requestId;
+    }
+
     /**
      * Gets the length.
      *
@@ -0,0 +1,133 @@
+package org.hyperion.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestFileCache {
+
+    private static final int FILE_SIZE = 100;
+
+    private static final int ENTRY_SIZE = FILE_SIZE + 96;
+
+    private AtomicInteger reads;
+
+    @BeforeEach
+    public void setUp() {
+        reads = new AtomicInteger();
+    }
+
+    private FileCache create(final long capacity) {
+        return new FileCache((index, file) -> {
+            reads.incrementAndGet();
+            final int size = file >= 1000 ? FILE_SIZE * 10 : FILE_SIZE;
+            return new CacheFile(index + 1, file, ByteBuffer.allocate(size));
+        }, capacity);
+    }
+
+    @Test
+    public void testHitsAndMisses() throws IOException {
+        final FileCache cache = create(ENTRY_SIZE * 4);
+        cache.getFile(1, 1);
+        cache.getFile(1, 1);
+        cache.getFile(1, 2);
+        assertEquals(2, reads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(ENTRY_SIZE * 2, cache.getSize());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        final FileCache cache = create(ENTRY_SIZE * 3);
+        cache.getFile(1, 1);
+        cache.getFile(1, 2);
+        cache.getFile(1, 3);
+        cache.getFile(1, 1);
+        cache.getFile(1, 4);
+        assertEquals(3, cache.getEntryCount());
+        assertEquals(1, cache.getEvictions());
+
+        reads.set(0);
+        cache.getFile(1, 1);
+        cache.getFile(1, 3);
+        cache.getFile(1, 4);
+        assertEquals(0, reads.get());
+        cache.getFile(1, 2);
+        assertEquals(1, reads.get());
+    }
+
+    @Test
+    public void testOversizeFileNotKept() throws IOException {
+        final FileCache cache = create(ENTRY_SIZE * 3);
+        cache.getFile(1, 1000);
+        cache.getFile(1, 1000);
+        assertEquals(2, reads.get());
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getSize());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testSetCapacityShrinks() throws IOException {
+        final FileCache cache = create(ENTRY_SIZE * 3);
+        cache.getFile(1, 1);
+        cache.getFile(1, 2);
+        cache.getFile(1, 3);
+        cache.setCapacity(ENTRY_SIZE);
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(ENTRY_SIZE, cache.getSize());
+        assertEquals(2, cache.getEvictions());
+
+        reads.set(0);
+        cache.getFile(1, 3);
+        assertEquals(0, reads.get());
+
+        cache.setCapacity(0);
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testFramesAddedToEntry() throws IOException {
+        final FileCache cache = create(ENTRY_SIZE * 3);
+        final AtomicInteger encodes = new AtomicInteger();
+        final FileCache.FrameEncoder encoder = file -> {
+            encodes.incrementAndGet();
+            return ByteBuffer.allocate(FILE_SIZE + 10).asReadOnlyBuffer();
+        };
+        final ByteBuffer frames = cache.getFrames(1, 1, encoder);
+        assertTrue(frames.isDirect());
+        assertEquals(FILE_SIZE + 10, frames.remaining());
+        assertEquals(ENTRY_SIZE + FILE_SIZE + 10, cache.getSize());
+        assertSame(frames, cache.getFrames(1, 1, encoder));
+        assertEquals(1, encodes.get());
+        assertEquals(1, reads.get());
+    }
+
+    @Test
+    public void testFramesNotKeptOverBudget() throws IOException {
+        final FileCache cache = create(ENTRY_SIZE + 10);
+        final AtomicInteger encodes = new AtomicInteger();
+        final FileCache.FrameEncoder encoder = file -> {
+            encodes.incrementAndGet();
+            return ByteBuffer.allocate(FILE_SIZE + 10).asReadOnlyBuffer();
+        };
+        assertFalse(cache.getFrames(1, 1, encoder).isDirect());
+        cache.getFrames(1, 1, encoder);
+        assertEquals(2, encodes.get());
+        assertEquals(1, reads.get());
+        assertEquals(ENTRY_SIZE, cache.getSize());
+    }
+
+}
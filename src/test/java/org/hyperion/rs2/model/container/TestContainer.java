@@ -196,6 +196,21 @@ public class TestContainer implements ContainerListener {
         assertEquals(item, container.get(0));
     }
 
+    @Test
+    public void testVersion() {
+        int version = container.getVersion();
+        container.set(0, new Item(995));
+        assertNotEquals(version, container.getVersion());
+        version = container.getVersion();
+        container.setFiringEvents(false);
+        container.set(1, new Item(995));
+        container.setFiringEvents(true);
+        assertNotEquals(version, container.getVersion());
+        version = container.getVersion();
+        container.clear();
+        assertNotEquals(version, container.getVersion());
+    }
+
     @Test
     public void testCapacity() {
         assertEquals(CAP, container.capacity());
@@ -0,0 +1,139 @@
+package org.hyperion.rs2.net.ondemand;
+
+import org.apache.mina.core.session.IoSession;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestOnDemandPool {
+
+    private final OnDemandPool pool = OnDemandPool.getOnDemandPool();
+
+    private final List<SessionStub> sessions = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        for (final SessionStub stub : sessions) {
+            pool.sessionClosed(stub.session);
+        }
+        pool.setSessionLimit(OnDemandPool.DEFAULT_SESSION_LIMIT);
+        pool.setWriteLimit(OnDemandPool.DEFAULT_WRITE_LIMIT);
+    }
+
+    @Test
+    public void testRoundRobin() throws InterruptedException {
+        final SessionStub a = new SessionStub();
+        final SessionStub b = new SessionStub();
+        final OnDemandRequest[] fromA = new OnDemandRequest[4];
+        for (int i = 0; i < fromA.length; i++) {
+            fromA[i] = a.push(i, 1);
+        }
+        final OnDemandRequest fromB = b.push(0, 1);
+        assertSame(fromA[0], pool.take());
+        assertSame(fromB, pool.take());
+        for (int i = 1; i < fromA.length; i++) {
+            assertSame(fromA[i], pool.take());
+        }
+    }
+
+    @Test
+    public void testHigherPriorityFirst() throws InterruptedException {
+        final SessionStub a = new SessionStub();
+        final OnDemandRequest low = a.push(0, 3);
+        final OnDemandRequest high = a.push(1, 1);
+        assertSame(high, pool.take());
+        assertSame(low, pool.take());
+    }
+
+    @Test
+    public void testPausedUntilSent() throws InterruptedException {
+        pool.setWriteLimit(1000);
+        final SessionStub a = new SessionStub();
+        final SessionStub b = new SessionStub();
+        a.scheduledWriteBytes = 2000;
+        final OnDemandRequest fromA = a.push(0, 1);
+        final OnDemandRequest fromB = b.push(0, 1);
+        assertSame(fromB, pool.take());
+
+        pool.messageSent(a.session);
+        final OnDemandRequest nextFromB = b.push(1, 1);
+        a.scheduledWriteBytes = 0;
+        pool.messageSent(a.session);
+        assertSame(nextFromB, pool.take());
+        assertSame(fromA, pool.take());
+    }
+
+    @Test
+    public void testSessionLimit() throws InterruptedException {
+        pool.setSessionLimit(2);
+        final SessionStub a = new SessionStub();
+        final OnDemandRequest first = a.push(0, 1);
+        a.push(1, 1);
+        assertFalse(a.closed);
+        a.push(2, 1);
+        assertTrue(a.closed);
+        assertSame(first, pool.take());
+    }
+
+    @Test
+    public void testClosedSessionDropped() throws InterruptedException {
+        final SessionStub a = new SessionStub();
+        final SessionStub b = new SessionStub();
+        a.push(0, 1);
+        final OnDemandRequest fromB = b.push(0, 1);
+        pool.sessionClosed(a.session);
+        a.push(1, 1);
+        assertSame(fromB, pool.take());
+    }
+
+    private final class SessionStub {
+
+        private final Map<Object, Object> attributes = new HashMap<>();
+
+        private final IoSession session;
+
+        private volatile long scheduledWriteBytes;
+
+        private volatile boolean closed;
+
+        private SessionStub() {
+            session = (IoSession) Proxy.newProxyInstance(IoSession.class.getClassLoader(), new Class<?>[]{IoSession.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getAttribute":
+                        return attributes.get(args[0]);
+                    case "setAttribute":
+                        return attributes.put(args[0], args.length > 1 ? args[1] : Boolean.TRUE);
+                    case "getScheduledWriteBytes":
+                        return scheduledWriteBytes;
+                    case "close":
+                        closed = true;
+                        return null;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                }
+            });
+            sessions.add(this);
+        }
+
+        private OnDemandRequest push(final int file, final int priority) {
+            final OnDemandRequest request = new OnDemandRequest(session, 1, file, priority);
+            pool.pushRequest(request);
+            return request;
+        }
+
+    }
+
+}
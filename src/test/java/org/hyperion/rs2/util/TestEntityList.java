@@ -200,6 +200,128 @@ public class TestEntityList {
         assertArrayEquals(actual, expected);
     }
 
+    @Test
+    public void testAddReusesFreedIndex() {
+        final EntityStub stub1 = new EntityStub();
+        final EntityStub stub2 = new EntityStub();
+        final EntityStub stub3 = new EntityStub();
+        list.add(stub1);
+        list.add(stub2);
+        list.remove(stub1);
+        list.add(stub3);
+        assertEquals(1, stub3.getIndex());
+        assertEquals(stub3, list.get(1));
+    }
+
+    @Test
+    public void testAddWhenFull() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(list.add(new EntityStub()));
+        }
+        assertFalse(list.add(new EntityStub()));
+        assertEquals(10, list.size());
+    }
+
+    @Test
+    public void testAddTwice() {
+        final EntityStub stub = new EntityStub();
+        assertTrue(list.add(stub));
+        assertFalse(list.add(stub));
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public void testContainsStaleIndex() {
+        final EntityStub stub1 = new EntityStub();
+        final EntityStub stub2 = new EntityStub();
+        list.add(stub1);
+        list.remove(stub1);
+        list.add(stub2);
+        assertEquals(stub1.getIndex(), stub2.getIndex());
+        assertFalse(list.contains(stub1));
+        assertTrue(list.contains(stub2));
+        assertFalse(list.remove(stub1));
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public void testGetAtSkipsHoles() {
+        final EntityStub stub1 = new EntityStub();
+        final EntityStub stub2 = new EntityStub();
+        final EntityStub stub3 = new EntityStub();
+        list.add(stub1);
+        list.add(stub2);
+        list.add(stub3);
+        list.remove(stub1);
+        assertEquals(2, list.size());
+        assertEquals(stub3, list.getAt(0));
+        assertEquals(stub2, list.getAt(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.getAt(2));
+    }
+
+    @Test
+    public void testIteratorRemoveWhileIterating() {
+        final List<EntityStub> stubs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            final EntityStub stub = new EntityStub();
+            stubs.add(stub);
+            list.add(stub);
+        }
+        final List<EntityStub> visited = new ArrayList<>();
+        for (final Iterator<EntityStub> it$ = list.iterator(); it$.hasNext(); ) {
+            final EntityStub stub = it$.next();
+            visited.add(stub);
+            if (stubs.indexOf(stub) % 2 == 0) {
+                it$.remove();
+            }
+        }
+        assertEquals(6, visited.size());
+        assertTrue(visited.containsAll(stubs));
+        assertEquals(3, list.size());
+    }
+
+    @Test
+    public void testIteratorExternalRemove() {
+        final EntityStub stub1 = new EntityStub();
+        final EntityStub stub2 = new EntityStub();
+        final EntityStub stub3 = new EntityStub();
+        list.add(stub1);
+        list.add(stub2);
+        list.add(stub3);
+        final List<EntityStub> visited = new ArrayList<>();
+        for (final EntityStub stub : list) {
+            visited.add(stub);
+            if (stub == stub1) {
+                list.remove(stub1);
+            }
+        }
+        assertEquals(3, visited.size());
+        assertTrue(visited.contains(stub2));
+        assertTrue(visited.contains(stub3));
+    }
+
+    @Test
+    public void testIteratorRemoveEarlierEntity() {
+        final List<EntityStub> stubs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final EntityStub stub = new EntityStub();
+            stubs.add(stub);
+            list.add(stub);
+        }
+        final EntityStub added = new EntityStub();
+        final List<EntityStub> visited = new ArrayList<>();
+        for (final EntityStub stub : list) {
+            visited.add(stub);
+            if (stub == stubs.get(2)) {
+                list.remove(stubs.get(0));
+                list.add(added);
+            }
+        }
+        assertEquals(stubs, visited);
+        assertFalse(list.contains(stubs.get(0)));
+        assertTrue(list.contains(added));
+    }
+
     private static class EntityStub extends Entity {
 
         @Override
@@ -212,6 +334,11 @@ public class TestEntityList {
 
         }
 
+        @Override
+        public void moveWithinRegion(final Region region) {
+
+        }
+
         @Override
         public void inflictDamage(final int damage, final HitType type) {
 
@@ -0,0 +1,121 @@
+package org.hyperion.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestKeyedExecutor {
+
+    @Test
+    public void testSameKeyInOrder() throws InterruptedException {
+        final ExecutorService service = Executors.newFixedThreadPool(8);
+        try {
+            final KeyedExecutor executor = new KeyedExecutor(service);
+            final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+            final CountDownLatch done = new CountDownLatch(1000);
+            for (int i = 0; i < 1000; i++) {
+                final int value = i;
+                executor.execute("player", () -> {
+                    order.add(value);
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, (int) order.get(i));
+            }
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testDifferentKeysConcurrent() throws InterruptedException {
+        final ExecutorService service = Executors.newFixedThreadPool(2);
+        try {
+            final KeyedExecutor executor = new KeyedExecutor(service);
+            final CountDownLatch started = new CountDownLatch(2);
+            final AtomicInteger finished = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(2);
+            for (final String key : new String[]{"a", "b"}) {
+                executor.execute(key, () -> {
+                    started.countDown();
+                    try {
+                        if (started.await(10, TimeUnit.SECONDS)) {
+                            finished.incrementAndGet();
+                        }
+                    } catch (final InterruptedException ignored) {
+                    }
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(2, finished.get());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testMultipleKeysInOrder() throws InterruptedException {
+        final ExecutorService service = Executors.newFixedThreadPool(4);
+        try {
+            final KeyedExecutor executor = new KeyedExecutor(service);
+            final List<String> order = Collections.synchronizedList(new ArrayList<>());
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(3);
+            executor.execute("a", () -> {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException ignored) {
+                }
+                order.add("a");
+                done.countDown();
+            });
+            executor.execute(Arrays.asList("a", "b"), () -> {
+                order.add("ab");
+                done.countDown();
+            });
+            executor.execute("b", () -> {
+                order.add("b");
+                done.countDown();
+            });
+            Thread.sleep(50);
+            assertTrue(order.isEmpty());
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("a", "ab", "b"), order);
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testRejectedTaskReleasesKey() {
+        final AtomicInteger rejections = new AtomicInteger(1);
+        final KeyedExecutor executor = new KeyedExecutor(runnable -> {
+            if (rejections.getAndDecrement() > 0) {
+                throw new RejectedExecutionException();
+            }
+            runnable.run();
+        });
+        final List<String> order = new ArrayList<>();
+        assertThrows(RejectedExecutionException.class, () -> executor.execute("a", () -> order.add("rejected")));
+        executor.execute("a", () -> order.add("a"));
+        assertEquals(Collections.singletonList("a"), order);
+    }
+
+}